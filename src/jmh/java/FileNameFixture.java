@@ -0,0 +1,86 @@
+import benchmarks.Fixture;
+
+/**
+ * Reading file names found by a scan: telling movie files from others, and
+ * parsing release names. Each operation reads the whole corpus.
+ */
+public class FileNameFixture implements Fixture {
+
+    /** File names in the styles found in real libraries. */
+    static final String[] CORPUS = {
+            "The.Thing.1982.REMASTERED.1080p.BluRay.x264-GROUP.mkv",
+            "2001.A.Space.Odyssey.1968.2160p.UHD.BluRay.x265-TERMiNAL.mkv",
+            "Blade.Runner.2049.2017.1080p.WEB-DL.DD5.1.H264-FGT.mkv",
+            "Inception (2010) [1080p] [YTS.MX].mp4",
+            "Harry.Potter.and.the.Deathly.Hallows.Part.1.2010.720p.BrRip.x264.YIFY.mp4",
+            "Heat.1995.Directors.Cut.CD2.avi",
+            "the_matrix_1999_x264.mkv",
+            "Alien 1979 Directors Cut Blu-ray.mkv",
+            "[Group] Akira (1988) [BD 1080p].mkv",
+            "Kill Bill Vol 1 - 2003.mkv",
+            "Spider-Man.Homecoming.2017.720p.WEBRip.x264.AAC-ETRG.mp4",
+            "Class.of.1984.1982.DVDRip.XviD.avi",
+            "1917.2019.1080p.BluRay.x264.mkv",
+            "Monsters, Inc. (2001).mkv",
+            "Amelie.2001.FRENCH.1080p.BluRay.x264.mkv",
+            "Se7en.1995.REMASTERED.1080p.BluRay.10bit.HDR.x265.mkv",
+            "Up (2009).m4v",
+            "Mad.Max.Fury.Road.2015.IMAX.2160p.WEB-DL.mkv",
+            "movie.mpg",
+            "The Godfather Part II 1974.mkv",
+            "Cam.2018.1080p.mkv",
+            "Dual.2022.1080p.WEB.mkv",
+            "Extended.Family.2010.mkv",
+            "DC.Showcase.mkv",
+            "Charlottes.Web.2006.1080p.BluRay.mkv",
+            "The.Internal.Affairs.2007.mkv",
+            "sample.txt",
+            "cover.jpg",
+            "movie.nfo",
+            "The.Dark.Knight.2008.mkv.part",
+    };
+
+    private final boolean[] movieFiles = new boolean[CORPUS.length];
+    private final ReleaseName[] releaseNames = new ReleaseName[CORPUS.length];
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void next() {
+    }
+
+    @Override
+    public Operation operation(String name) {
+        switch (name) {
+            case "isMovieFile":
+                return new Operation() {
+                    @Override
+                    public Object run() {
+                        for (int i = 0; i < CORPUS.length; i++) {
+                            movieFiles[i] = MovieFileWalker.isMovieFile(CORPUS[i]);
+                        }
+                        return movieFiles;
+                    }
+                };
+            case "parseReleaseName":
+                return new Operation() {
+                    @Override
+                    public Object run() {
+                        for (int i = 0; i < CORPUS.length; i++) {
+                            releaseNames[i] = ReleaseName.parse(CORPUS[i]);
+                        }
+                        return releaseNames;
+                    }
+                };
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    @Override
+    public void tearDown() {
+    }
+
+}
@@ -0,0 +1,80 @@
+import benchmarks.Fixture;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Decoding and scaling a downloaded image to the height it is shown at.
+ */
+public class ImageScalerFixture implements Fixture {
+
+    /** The size of the downloaded image, as width x height. */
+    private final String sourceSize;
+
+    /** The height the image is shown at. */
+    private final int height;
+
+    private byte[] data;
+    private BufferedImage image;
+    private int width;
+
+    public ImageScalerFixture(String sourceSize, int height) {
+        this.sourceSize = sourceSize;
+        this.height = height;
+    }
+
+    @Override
+    public void setUp() throws IOException {
+        String[] size = sourceSize.split("x");
+        int sourceWidth = Integer.parseInt(size[0]);
+        int sourceHeight = Integer.parseInt(size[1]);
+        width = sourceWidth * height / sourceHeight;
+
+        image = new BufferedImage(sourceWidth, sourceHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY,
+                sourceWidth, sourceHeight, Color.ORANGE));
+        graphics.fillRect(0, 0, sourceWidth, sourceHeight);
+        graphics.dispose();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", output);
+        data = output.toByteArray();
+    }
+
+    @Override
+    public void next() {
+    }
+
+    @Override
+    public Operation operation(String name) {
+        switch (name) {
+            case "decode":
+                return new Operation() {
+                    @Override
+                    public Object run() throws IOException {
+                        return ImageScaler.decode(data, height);
+                    }
+                };
+            case "scale":
+                return new Operation() {
+                    @Override
+                    public Object run() {
+                        return ImageScaler.scale(image, width, height);
+                    }
+                };
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    @Override
+    public void tearDown() {
+    }
+
+}
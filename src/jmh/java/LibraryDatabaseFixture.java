@@ -0,0 +1,152 @@
+import benchmarks.Fixture;
+import com.omertron.themoviedbapi.model.Genre;
+import com.omertron.themoviedbapi.model.MovieDb;
+import com.omertron.themoviedbapi.model.PersonCast;
+import com.omertron.themoviedbapi.wrapper.WrapperMovieCasts;
+import com.omertron.themoviedbapi.wrapper.WrapperMovieKeywords;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saving movies to a library database of a given size: one movie at a time,
+ * as the library did before changes were grouped, and in the batches the
+ * {@link LibraryWriter} commits. Each operation adds the movies and removes
+ * them again, so the library stays the same size. Also reading a page of a
+ * query, which should cost about the same whatever the size of the library.
+ */
+public class LibraryDatabaseFixture implements Fixture {
+
+    private static final MovieQuery QUERY = MovieQuery.all()
+            .withGenre("drama").withYears(1990, 1999).withOrder(SortOrder.RATING);
+    private static final int PAGE_SIZE = 50;
+    private static final String[][] GENRES = {{"Drama"}, {"Comedy"}, {"Drama", "Crime"}, {"Horror"}};
+
+    private final int librarySize;
+
+    /** The number of movies added and removed by each operation. */
+    private final int batchSize;
+
+    private File file;
+    private LibraryDatabase libraryDatabase;
+    private List<Movie> movies;
+    private List<LibraryWriter.Change> adds;
+    private List<LibraryWriter.Change> removes;
+
+    public LibraryDatabaseFixture(int librarySize, int batchSize) {
+        this.librarySize = librarySize;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void setUp() throws IOException, SQLException {
+        file = File.createTempFile("library-benchmark", ".db");
+        if (!file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        libraryDatabase = new LibraryDatabase(file.getPath());
+
+        List<LibraryWriter.Change> library = new ArrayList<>(librarySize);
+        for (int i = 0; i < librarySize; i++) {
+            library.add(new LibraryWriter.Change(createMovie(i), true));
+        }
+        libraryDatabase.applyChanges(library);
+
+        movies = new ArrayList<>(batchSize);
+        adds = new ArrayList<>(batchSize);
+        removes = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Movie movie = createMovie(librarySize + i);
+            movies.add(movie);
+            adds.add(new LibraryWriter.Change(movie, true));
+            removes.add(new LibraryWriter.Change(movie, false));
+        }
+    }
+
+    @Override
+    public void next() {
+    }
+
+    @Override
+    public Operation operation(String name) {
+        switch (name) {
+            case "addRemoveEach":
+                return new Operation() {
+                    @Override
+                    public Object run() throws SQLException {
+                        for (Movie movie : movies) {
+                            libraryDatabase.addMovie(movie);
+                        }
+                        for (Movie movie : movies) {
+                            libraryDatabase.removeMovie(movie);
+                        }
+                        return null;
+                    }
+                };
+            case "addRemoveBatch":
+                return new Operation() {
+                    @Override
+                    public Object run() throws SQLException {
+                        libraryDatabase.applyChanges(adds);
+                        libraryDatabase.applyChanges(removes);
+                        return null;
+                    }
+                };
+            case "queryPage":
+                return new Operation() {
+                    @Override
+                    public Object run() throws SQLException {
+                        return libraryDatabase.queryMovies(null, QUERY, 0, PAGE_SIZE);
+                    }
+                };
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        libraryDatabase.close();
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Creates a movie with its details held, as a scan does, so that its
+     * roles and genres are saved.
+     */
+    private static Movie createMovie(int id) {
+        MovieDb movieDb = new MovieDb();
+        movieDb.setId(id + 1);
+        movieDb.setTitle("Movie " + id);
+        movieDb.setReleaseDate((1920 + id % 100) + "-01-01");
+        movieDb.setVoteAverage(id % 100 / 10f);
+
+        List<PersonCast> cast = new ArrayList<>();
+        for (int actor : new int[] {id % 997, id % 499, id % 101}) {
+            PersonCast person = new PersonCast();
+            person.setName("Actor " + actor);
+            cast.add(person);
+        }
+        WrapperMovieCasts casts = new WrapperMovieCasts();
+        casts.setCast(cast);
+        movieDb.setCasts(casts);
+
+        List<Genre> genres = new ArrayList<>();
+        for (String name : GENRES[id % GENRES.length]) {
+            Genre genre = new Genre();
+            genre.setName(name);
+            genres.add(genre);
+        }
+        movieDb.setGenres(genres);
+        movieDb.setKeywords(new WrapperMovieKeywords());
+
+        return new Movie(null, movieDb, FetchProfile.DETAIL,
+                new File("/movies/" + movieDb.getTitle() + ".mkv"));
+    }
+
+}
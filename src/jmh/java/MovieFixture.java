@@ -0,0 +1,74 @@
+import benchmarks.Fixture;
+import com.omertron.themoviedbapi.model.MovieDb;
+import com.omertron.themoviedbapi.model.PersonCast;
+import com.omertron.themoviedbapi.wrapper.WrapperMovieCasts;
+import com.omertron.themoviedbapi.wrapper.WrapperMovieKeywords;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filling in a movie from TheMovieDb information, which sorts its title and
+ * builds its cast list.
+ */
+public class MovieFixture implements Fixture {
+
+    /** The number of people in the cast. */
+    private final int castSize;
+
+    private MovieDb movieDb;
+    private Movie movie;
+
+    public MovieFixture(int castSize) {
+        this.castSize = castSize;
+    }
+
+    @Override
+    public void setUp() {
+        List<PersonCast> cast = new ArrayList<>(castSize);
+        for (int i = 0; i < castSize; i++) {
+            PersonCast person = new PersonCast();
+            person.setId(1000 + i);
+            person.setName("Actor Number " + i);
+            person.setCharacter("Character " + i);
+            person.setOrder(i);
+            cast.add(person);
+        }
+
+        WrapperMovieCasts casts = new WrapperMovieCasts();
+        casts.setCast(cast);
+
+        movieDb = new MovieDb();
+        movieDb.setId(1091);
+        movieDb.setTitle("The Thing");
+        movieDb.setReleaseDate("1982-06-25");
+        movieDb.setCasts(casts);
+        // Details are always fetched with their keywords, as Movie expects.
+        movieDb.setKeywords(new WrapperMovieKeywords());
+
+        movie = new Movie(null, movieDb, FetchProfile.LIST, null);
+    }
+
+    @Override
+    public void next() {
+    }
+
+    @Override
+    public Operation operation(String name) {
+        if (!name.equals("setMovie")) {
+            throw new IllegalArgumentException(name);
+        }
+        return new Operation() {
+            @Override
+            public Object run() {
+                movie.setMovie(movieDb, FetchProfile.DETAIL);
+                return movie.getCastList();
+            }
+        };
+    }
+
+    @Override
+    public void tearDown() {
+    }
+
+}
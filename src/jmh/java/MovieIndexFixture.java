@@ -0,0 +1,89 @@
+import benchmarks.Fixture;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Keeping the library in order: adding a movie to, removing a movie from and
+ * finding a movie in a library of a given size, in every sort order.
+ */
+public class MovieIndexFixture implements Fixture {
+
+    private final int librarySize;
+
+    private MovieIndex index;
+    private List<Movie> library;
+    private Movie newMovie;
+    private Movie existingMovie;
+    private Random random;
+
+    public MovieIndexFixture(int librarySize) {
+        this.librarySize = librarySize;
+    }
+
+    @Override
+    public void setUp() {
+        random = new Random(42);
+        library = new ArrayList<>(librarySize);
+        for (int i = 0; i < librarySize; i++) {
+            library.add(createMovie(i));
+        }
+        index = MovieIndex.empty().withMovies(library);
+    }
+
+    @Override
+    public void next() {
+        newMovie = createMovie(librarySize + random.nextInt(librarySize));
+        existingMovie = library.get(random.nextInt(librarySize));
+    }
+
+    @Override
+    public Operation operation(String name) {
+        switch (name) {
+            case "withMovie":
+                return new Operation() {
+                    @Override
+                    public Object run() {
+                        return index.withMovie(newMovie);
+                    }
+                };
+            case "withoutMovie":
+                return new Operation() {
+                    @Override
+                    public Object run() {
+                        return index.withoutMovie(existingMovie);
+                    }
+                };
+            case "indexOf":
+                return new Operation() {
+                    @Override
+                    public Object run() {
+                        return index.indexOf(existingMovie);
+                    }
+                };
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    @Override
+    public void tearDown() {
+    }
+
+    private Movie createMovie(int id) {
+        String title = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " "
+                + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + id;
+        return new Movie(null, id + 1, title, 1920 + random.nextInt(100),
+                random.nextInt(100) / 10f, random.nextLong(),
+                Collections.singletonList(new File("/movies/" + title + ".mkv")), "", "", "");
+    }
+
+    private static final String[] TITLE_WORDS = {
+            "The", "A", "An", "Last", "Night", "Return", "City", "Dark", "Star", "Love",
+            "War", "Ghost", "King", "Island", "Road", "Blue", "Red", "Empire", "Time", "Zero",
+    };
+
+}
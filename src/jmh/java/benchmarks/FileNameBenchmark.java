@@ -0,0 +1,49 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading file names found by a scan: telling movie files from others, and
+ * parsing release names. Each invocation reads the whole corpus in
+ * FileNameFixture.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileNameBenchmark {
+
+    private Fixture.Operation isMovieFile;
+    private Fixture.Operation parseReleaseName;
+
+    @Setup
+    public void createFixture() throws Exception {
+        Fixture fixture = Fixtures.create("FileNameFixture");
+        isMovieFile = fixture.operation("isMovieFile");
+        parseReleaseName = fixture.operation("parseReleaseName");
+    }
+
+    @Benchmark
+    public Object isMovieFile() throws Exception {
+        return isMovieFile.run();
+    }
+
+    @Benchmark
+    public Object parseReleaseName() throws Exception {
+        return parseReleaseName.run();
+    }
+
+}
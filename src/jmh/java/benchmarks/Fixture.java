@@ -0,0 +1,46 @@
+package benchmarks;
+
+/**
+ * The data and operations of a benchmark. JMH does not allow benchmarks in
+ * the default package, and classes in other packages cannot refer to the
+ * application's classes in it, so each benchmark keeps its work in a
+ * fixture in the default package and runs it through this interface.
+ */
+public interface Fixture {
+
+    /**
+     * Creates the data the operations run on, once before they are measured.
+     * @throws Exception If the data could not be created.
+     */
+    void setUp() throws Exception;
+
+    /**
+     * Picks the data for the next operation, for fixtures that need
+     * different data each time. Not measured.
+     */
+    void next();
+
+    /**
+     * @param name The name of an operation, as used by its benchmark method.
+     * @return The operation.
+     */
+    Operation operation(String name);
+
+    /**
+     * Deletes anything the fixture created outside memory.
+     */
+    void tearDown();
+
+    /**
+     * One operation measured by a benchmark.
+     */
+    interface Operation {
+
+        /**
+         * @return The result, consumed by JMH so that the work is not optimised away.
+         * @throws Exception If the operation failed.
+         */
+        Object run() throws Exception;
+    }
+
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Creates the fixtures in the default package, which can only be reached by name.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a fixture and its data.
+     * @param className The name of the fixture class.
+     * @param arguments The benchmark parameters, in the order its constructor takes them.
+     * @return The fixture, set up.
+     * @throws Exception If the fixture could not be created or set up.
+     */
+    static Fixture create(String className, Object... arguments) throws Exception {
+        for (Constructor<?> constructor : Class.forName(className).getConstructors()) {
+            if (constructor.getParameterTypes().length == arguments.length) {
+                Fixture fixture = (Fixture) constructor.newInstance(arguments);
+                fixture.setUp();
+                return fixture;
+            }
+        }
+        throw new IllegalArgumentException(className + " has no constructor taking "
+                + arguments.length + " arguments");
+    }
+
+}
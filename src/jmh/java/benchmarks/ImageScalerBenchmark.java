@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding and scaling a downloaded image to the height it is shown at. See
+ * ImageScalerFixture.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageScalerBenchmark {
+
+    /** The size of the downloaded image, as width x height. */
+    @Param({"780x439", "1920x1080", "3840x2160"})
+    public String sourceSize;
+
+    /** The height the image is shown at. */
+    @Param({"200"})
+    public int height;
+
+    private Fixture.Operation decode;
+    private Fixture.Operation scale;
+
+    @Setup
+    public void createImage() throws Exception {
+        Fixture fixture = Fixtures.create("ImageScalerFixture", sourceSize, height);
+        decode = fixture.operation("decode");
+        scale = fixture.operation("scale");
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return decode.run();
+    }
+
+    @Benchmark
+    public Object scale() throws Exception {
+        return scale.run();
+    }
+
+}
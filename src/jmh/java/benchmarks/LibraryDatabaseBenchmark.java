@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving movies to a library database of a given size, one at a time and in
+ * batches, and reading a page of a query. See LibraryDatabaseFixture.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryDatabaseBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int librarySize;
+
+    /** The number of movies added and removed by each invocation. */
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private Fixture fixture;
+    private Fixture.Operation addRemoveEach;
+    private Fixture.Operation addRemoveBatch;
+    private Fixture.Operation queryPage;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws Exception {
+        fixture = Fixtures.create("LibraryDatabaseFixture", librarySize, batchSize);
+        addRemoveEach = fixture.operation("addRemoveEach");
+        addRemoveBatch = fixture.operation("addRemoveBatch");
+        queryPage = fixture.operation("queryPage");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabase() {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public Object addRemoveEach() throws Exception {
+        return addRemoveEach.run();
+    }
+
+    @Benchmark
+    public Object addRemoveBatch() throws Exception {
+        return addRemoveBatch.run();
+    }
+
+    @Benchmark
+    public Object queryPage() throws Exception {
+        return queryPage.run();
+    }
+
+}
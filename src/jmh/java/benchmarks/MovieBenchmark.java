@@ -0,0 +1,45 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling in a movie from TheMovieDb information, which sorts its title and
+ * builds its cast list. See MovieFixture.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MovieBenchmark {
+
+    /** The number of people in the cast. */
+    @Param({"5", "40", "200"})
+    public int castSize;
+
+    private Fixture.Operation setMovie;
+
+    @Setup
+    public void createMovie() throws Exception {
+        setMovie = Fixtures.create("MovieFixture", castSize).operation("setMovie");
+    }
+
+    @Benchmark
+    public Object setMovie() throws Exception {
+        return setMovie.run();
+    }
+
+}
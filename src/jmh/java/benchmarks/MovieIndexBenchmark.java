@@ -0,0 +1,66 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the library in order: adding a movie to, removing a movie from and
+ * finding a movie in a library of a given size. See MovieIndexFixture.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MovieIndexBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int librarySize;
+
+    private Fixture fixture;
+    private Fixture.Operation withMovie;
+    private Fixture.Operation withoutMovie;
+    private Fixture.Operation indexOf;
+
+    @Setup(Level.Trial)
+    public void createLibrary() throws Exception {
+        fixture = Fixtures.create("MovieIndexFixture", librarySize);
+        withMovie = fixture.operation("withMovie");
+        withoutMovie = fixture.operation("withoutMovie");
+        indexOf = fixture.operation("indexOf");
+    }
+
+    @Setup(Level.Invocation)
+    public void pickMovies() {
+        fixture.next();
+    }
+
+    @Benchmark
+    public Object withMovie() throws Exception {
+        return withMovie.run();
+    }
+
+    @Benchmark
+    public Object withoutMovie() throws Exception {
+        return withoutMovie.run();
+    }
+
+    @Benchmark
+    public Object indexOf() throws Exception {
+        return indexOf.run();
+    }
+
+}
@@ -0,0 +1,488 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.omertron.themoviedbapi.MovieDbException;
+import com.omertron.themoviedbapi.model.MovieDb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Imports movies without a user interface, for filling a library on a
+ * machine with no display. Folders are scanned as {@link MovieScanner} does
+ * for the user interface, all at once, and titles are looked up several at a
+ * time. Progress is printed to standard error while the import runs, and a
+ * summary is printed to standard output as JSON when it ends: how many files
+ * and titles were found, how fast, and how long the requests for movie
+ * information took.
+ *
+ * The metadata provider is chosen by the system properties, as for the user
+ * interface, so an import can be run against a recording, see
+ * {@link MovieManager#createMetadataProvider()}.
+ */
+public class BulkImporter {
+
+    private static final String USAGE =
+            "Usage: BulkImporter [options] [folder...]\n"
+            + "  --titles <file>   Import the titles listed in a file, one a line, or - for\n"
+            + "                    standard input. A title may include its year.\n"
+            + "  --threads <n>     Titles looked up at once (default 8).\n"
+            + "  --progress <ms>   How often to print progress (default 1000, 0 for never).\n"
+            + "  --summary <file>  Also write the summary to a file.\n"
+            + "  --verbose         Log every request.\n"
+            + "With no folders or titles, titles are read from standard input.";
+
+    private static final int DEFAULT_THREADS = 8;
+    private static final int LOAD_PAGE_SIZE = 250;
+    private static final long DEFAULT_PROGRESS_MS = 1000;
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private final MovieManager movieManager;
+    private final PrintStream progressOut;
+
+    private final AtomicInteger filesFound = new AtomicInteger();
+    private final AtomicInteger filesProcessed = new AtomicInteger();
+    private final AtomicInteger titlesDone = new AtomicInteger();
+    private final AtomicInteger titlesFound = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+    private final Latencies titleLatencies = new Latencies();
+    private final Latencies searchLatencies = new Latencies();
+    private final Latencies infoLatencies = new Latencies();
+
+    private int titleCount;
+    private int storedMovies;
+    private long start;
+
+    /**
+     * @param metadataProvider The provider of movie information.
+     * @param progressOut Where to print progress.
+     */
+    public BulkImporter(MetadataProvider metadataProvider, PrintStream progressOut) {
+        this.movieManager = new MovieManager(new TimedProvider(metadataProvider));
+        this.progressOut = progressOut;
+    }
+
+    /**
+     * Imports folders and titles, printing progress as it goes.
+     * @param folders The folders to scan.
+     * @param titles The titles to look up.
+     * @param threads The number of titles to look up at once.
+     * @param progressMs How often to print progress, or 0 for never.
+     * @return The summary of the import.
+     */
+    public ObjectNode run(List<File> folders, List<String> titles, int threads,
+                          long progressMs) throws InterruptedException {
+        start = System.nanoTime();
+        titleCount = titles.size();
+
+        // Start from the stored library, as the user interface does.
+        movieManager.loadMovies(LOAD_PAGE_SIZE, new MovieManager.MoviePageListener() {
+            @Override
+            public void pageLoaded(List<Movie> movies) {
+                movieManager.addLoadedMovies(movies);
+            }
+        });
+        storedMovies = movieManager.getMovieIndex().size();
+
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(
+                daemonThreads("BulkImporter-progress"));
+        if (progressMs > 0) {
+            progress.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    printProgress();
+                }
+            }, progressMs, progressMs, TimeUnit.MILLISECONDS);
+        }
+
+        CountDownLatch scans = scanFolders(folders);
+        importTitles(titles, threads);
+        scans.await();
+
+        long importNs = System.nanoTime() - start;
+        progress.shutdownNow();
+        printProgress();
+
+        // Wait for the database to catch up, and count it in the time taken.
+        movieManager.close();
+        long totalNs = System.nanoTime() - start;
+
+        return summarise(folders, importNs, totalNs);
+    }
+
+    private CountDownLatch scanFolders(List<File> folders) {
+        final CountDownLatch scans = new CountDownLatch(folders.size());
+
+        for (File folder : folders) {
+            final int[] last = new int[2];
+
+            movieManager.scanForMovies(folder, new MovieScanner.ScanListener() {
+                @Override
+                public void movieAdded(Movie movie, int index) {
+                }
+
+                @Override
+                public void progressChanged(int processed, int found) {
+                    // Each scan counts for itself; add what has changed since last time.
+                    synchronized (last) {
+                        filesProcessed.addAndGet(processed - last[0]);
+                        filesFound.addAndGet(found - last[1]);
+                        last[0] = processed;
+                        last[1] = found;
+                    }
+                }
+
+                @Override
+                public void scanFinished(boolean cancelled) {
+                    scans.countDown();
+                }
+            });
+        }
+
+        return scans;
+    }
+
+    private void importTitles(List<String> titles, int threads) throws InterruptedException {
+        if (titles.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                daemonThreads("BulkImporter-lookup"));
+
+        for (final String title : titles) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long lookupStart = System.nanoTime();
+                    Movie movie = movieManager.addMovie(title, null);
+                    titleLatencies.add(System.nanoTime() - lookupStart);
+
+                    if (movie != null) {
+                        titlesFound.incrementAndGet();
+                    }
+                    else {
+                        MovieManager.LOGGER.log(Level.WARNING, "Not found: " + title);
+                    }
+                    titlesDone.incrementAndGet();
+                }
+            });
+        }
+
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            // Still looking up.
+        }
+    }
+
+    private void printProgress() {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int files = filesProcessed.get();
+        int titles = titlesDone.get();
+
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("[%7.1fs]", seconds));
+        if (filesFound.get() > 0) {
+            line.append(String.format(" files %d/%d", files, filesFound.get()));
+        }
+        if (titleCount > 0) {
+            line.append(String.format(" titles %d/%d", titles, titleCount));
+        }
+        line.append(String.format(" movies %d, %.1f/s, throttled %d, heap %dMB",
+                moviesAdded(), seconds > 0 ? (files + titles) / seconds : 0,
+                throttled.get(), usedHeap() / (1024 * 1024)));
+
+        progressOut.println(line);
+    }
+
+    private ObjectNode summarise(List<File> folders, long importNs, long totalNs) {
+        ObjectNode summary = new ObjectMapper().createObjectNode();
+
+        ArrayNode folderNames = summary.putArray("folders");
+        for (File folder : folders) {
+            folderNames.add(folder.getPath());
+        }
+
+        double importSeconds = importNs / 1e9;
+        summary.put("filesFound", filesFound.get());
+        summary.put("filesProcessed", filesProcessed.get());
+        summary.put("titles", titleCount);
+        summary.put("titlesFound", titlesFound.get());
+        summary.put("storedMovies", storedMovies);
+        summary.put("moviesAdded", moviesAdded());
+        summary.put("libraryMovies", movieManager.getMovieIndex().size());
+        summary.put("importSeconds", round(importSeconds));
+        summary.put("totalSeconds", round(totalNs / 1e9));
+        summary.put("filesPerSecond", round(filesProcessed.get() / importSeconds));
+        summary.put("titlesPerSecond", round(titlesDone.get() / importSeconds));
+        summary.put("throttledRequests", throttled.get());
+
+        ObjectNode latencies = summary.putObject("latencyMs");
+        titleLatencies.summarise(latencies.putObject("title"));
+        searchLatencies.summarise(latencies.putObject("search"));
+        infoLatencies.summarise(latencies.putObject("movieInfo"));
+
+        summary.put("peakHeapBytes", peakHeap());
+        return summary;
+    }
+
+    private int moviesAdded() {
+        return movieManager.getMovieIndex().size() - storedMovies;
+    }
+
+    private static double round(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value)
+                ? 0 : Math.round(value * 100) / 100.0;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the most heap used at any time, as the sum of the peaks of
+     * each heap pool, which slightly overstates it.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Times each request made to the metadata provider, and counts the ones
+     * that are rate limited.
+     */
+    private class TimedProvider implements MetadataProvider {
+
+        private final MetadataProvider provider;
+
+        private TimedProvider(MetadataProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public List<MovieDb> searchMovie(String title, int year) throws MovieDbException {
+            long requestStart = System.nanoTime();
+            try {
+                return provider.searchMovie(title, year);
+            }
+            finally {
+                finished(searchLatencies, requestStart);
+            }
+        }
+
+        @Override
+        public MovieDb getMovieInfo(int movieId, FetchProfile profile) throws MovieDbException {
+            long requestStart = System.nanoTime();
+            try {
+                return provider.getMovieInfo(movieId, profile);
+            }
+            finally {
+                finished(infoLatencies, requestStart);
+            }
+        }
+
+        @Override
+        public byte[] getImage(String path, String size) throws IOException {
+            return provider.getImage(path, size);
+        }
+
+        private void finished(Latencies latencies, long requestStart) {
+            latencies.add(System.nanoTime() - requestStart);
+            if (TmdbHttpClient.getLastStatus() == TmdbHttpClient.STATUS_TOO_MANY_REQUESTS) {
+                throttled.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Every latency recorded for one kind of request, in nanoseconds.
+     */
+    private static class Latencies {
+
+        private long[] samples = new long[1024];
+        private int count;
+
+        private synchronized void add(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+
+        private synchronized void summarise(ObjectNode node) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+
+            node.put("count", count);
+            node.put("p50", percentile(sorted, 0.50));
+            node.put("p90", percentile(sorted, 0.90));
+            node.put("p99", percentile(sorted, 0.99));
+            node.put("max", percentile(sorted, 1));
+        }
+
+        private static double percentile(long[] sorted, double fraction) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return round(sorted[Math.max(0, index)] / 1e6);
+        }
+    }
+
+    private static List<String> readTitles(String source) throws IOException {
+        InputStream in = source.equals("-") ? System.in : new FileInputStream(source);
+        List<String> titles = new ArrayList<>();
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    titles.add(line);
+                }
+            }
+        }
+        finally {
+            if (in != System.in) {
+                reader.close();
+            }
+        }
+
+        return titles;
+    }
+
+    public static void main(String[] args) {
+        List<File> folders = new ArrayList<>();
+        String titleSource = null;
+        String summaryFile = null;
+        int threads = DEFAULT_THREADS;
+        long progressMs = DEFAULT_PROGRESS_MS;
+        boolean verbose = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--titles":
+                        titleSource = args[++i];
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--progress":
+                        progressMs = Long.parseLong(args[++i]);
+                        break;
+                    case "--summary":
+                        summaryFile = args[++i];
+                        break;
+                    case "--verbose":
+                        verbose = true;
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        folders.add(new File(args[i]));
+                }
+            }
+            if (threads < 1) {
+                throw new IllegalArgumentException("--threads");
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE);
+        }
+
+        if (folders.isEmpty() && titleSource == null) {
+            titleSource = "-";
+        }
+
+        if (!verbose) {
+            MovieManager.LOGGER.setLevel(Level.WARNING);
+        }
+
+        for (File folder : folders) {
+            if (!folder.isDirectory()) {
+                System.err.println("Not a folder: " + folder);
+                System.exit(EXIT_USAGE);
+            }
+        }
+
+        try {
+            List<String> titles = titleSource != null
+                    ? readTitles(titleSource) : new ArrayList<String>();
+
+            BulkImporter importer = new BulkImporter(MovieManager.createMetadataProvider(),
+                    System.err);
+            ObjectNode summary = importer.run(folders, titles, threads, progressMs);
+
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            System.out.println(mapper.writeValueAsString(summary));
+            if (summaryFile != null) {
+                mapper.writeValue(new File(summaryFile), summary);
+            }
+        }
+        catch (MovieDbException e) {
+            System.err.println("Could not connect to TheMovieDb: " + e.getMessage()
+                    + ". Is there an API key in api.key?");
+            System.exit(EXIT_FAILED);
+        }
+        catch (IOException e) {
+            System.err.println("Import failed: " + e.getMessage());
+            System.exit(EXIT_FAILED);
+        }
+        catch (InterruptedException e) {
+            System.exit(EXIT_FAILED);
+        }
+
+        System.exit(EXIT_OK);
+    }
+
+}
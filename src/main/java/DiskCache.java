@@ -0,0 +1,150 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * A directory of cached files with a size limit. When the files grow past the
+ * limit the least recently used are deleted. Use is tracked through the file
+ * modification times, so it carries over between runs.
+ */
+public class DiskCache {
+
+    private final File directory;
+    private final long maxBytes;
+
+    /** Size and last use of each cached file. */
+    private final Map<String, long[]> entries = new HashMap<>();
+    private long totalBytes;
+
+    /**
+     * Opens a cache in the given directory, creating it if necessary.
+     * @param directory The directory to keep cached files in.
+     * @param maxBytes The size the cache is allowed to grow to.
+     */
+    public DiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not create cache directory "
+                    + directory);
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && !file.getName().endsWith(".tmp")) {
+                    entries.put(file.getName(), new long[] {file.length(), file.lastModified()});
+                    totalBytes += file.length();
+                }
+                else if (file.getName().endsWith(".tmp")) {
+                    // Left over from a write that did not finish.
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a cached file.
+     * @param name The name of the file.
+     * @return The contents of the file, or null if it is not cached.
+     */
+    public byte[] read(String name) {
+        synchronized (this) {
+            long[] entry = entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+            entry[1] = System.currentTimeMillis();
+        }
+
+        File file = new File(directory, name);
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not read cache entry " + name);
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a file to the cache, replacing any existing file with the same name.
+     * @param name The name of the file.
+     * @param data The contents of the file.
+     */
+    public void write(String name, byte[] data) {
+        File file = new File(directory, name);
+
+        try {
+            // Write to a temporary file first so readers never see half an entry.
+            File temp = File.createTempFile("entry", ".tmp", directory);
+            Files.write(temp.toPath(), data);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not write cache entry " + name);
+            return;
+        }
+
+        synchronized (this) {
+            long[] old = entries.put(name, new long[] {data.length, System.currentTimeMillis()});
+            if (old != null) {
+                totalBytes -= old[0];
+            }
+            totalBytes += data.length;
+
+            if (totalBytes > maxBytes) {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Deletes a file from the cache.
+     * @param name The name of the file.
+     */
+    public synchronized void remove(String name) {
+        long[] entry = entries.remove(name);
+        if (entry != null) {
+            totalBytes -= entry[0];
+        }
+        new File(directory, name).delete();
+    }
+
+    /**
+     * Deletes the least recently used files until the cache is comfortably
+     * below its size limit, so that eviction does not run on every write.
+     */
+    private synchronized void evict() {
+        List<Map.Entry<String, long[]>> byLastUse = new ArrayList<>(entries.entrySet());
+        Collections.sort(byLastUse, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                return Long.compare(a.getValue()[1], b.getValue()[1]);
+            }
+        });
+
+        long target = maxBytes * 9 / 10;
+        for (Map.Entry<String, long[]> entry : byLastUse) {
+            if (totalBytes <= target) {
+                break;
+            }
+            remove(entry.getKey());
+        }
+    }
+
+}
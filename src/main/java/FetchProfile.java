@@ -0,0 +1,53 @@
+/**
+ * How much movie information to fetch from TheMovieDb. Each profile includes
+ * everything in the profiles before it, so information fetched for a larger
+ * profile can be used wherever a smaller one is asked for.
+ */
+public enum FetchProfile {
+
+    /** Enough to list and sort a movie: title, release date and image paths. */
+    LIST(),
+
+    /**
+     * Everything the movie page shows, adding the tagline, overview, genres
+     * and cast, and the keywords the movie list can be filtered by.
+     */
+    DETAIL("casts", "keywords"),
+
+    /** Every section TheMovieDb offers. */
+    FULL("belongsToCollection", "genres", "homepage", "imdbID", "overview",
+            "productionCompanies", "spokenLanguages", "tagline", "status",
+            "alternativeTitles", "casts", "images", "keywords", "releases",
+            "trailers", "translations", "similarMovies", "reviews", "lists");
+
+    private final String appendToResponse;
+
+    FetchProfile(String... sections) {
+        StringBuilder builder = new StringBuilder();
+        for (String section : sections) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(section);
+        }
+        appendToResponse = builder.toString();
+    }
+
+    /**
+     * Returns the extra sections to ask TheMovieDb for.
+     * @return The sections, separated by commas, or an empty string for none.
+     */
+    public String getAppendToResponse() {
+        return appendToResponse;
+    }
+
+    /**
+     * Returns whether information fetched for this profile is enough for another.
+     * @param profile The profile needed.
+     * @return True if this profile includes everything in the other.
+     */
+    public boolean includes(FetchProfile profile) {
+        return compareTo(profile) >= 0;
+    }
+
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies a movie file by its content, so that it can be recognised after
+ * being moved or renamed, or as a copy of another file.
+ *
+ * Only the size and the first and last {@link #SAMPLE_BYTES} of the file are
+ * read, so a fingerprint costs two short reads however large the file is.
+ * The start and end of a video hold its headers and index, which differ
+ * between encodes even of the same movie, and the size differs for
+ * practically every pair of distinct files.
+ */
+public final class FileFingerprint {
+
+    static final int SAMPLE_BYTES = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Read buffers are reused by each thread, as fingerprints are taken in bulk. */
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(SAMPLE_BYTES);
+        }
+    };
+
+    private FileFingerprint() {
+    }
+
+    /**
+     * Takes the fingerprint of a file.
+     * @param file The file.
+     * @return The fingerprint.
+     * @throws IOException If the file could not be read.
+     */
+    public static String of(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available.", e);
+        }
+
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            ByteBuffer buffer = BUFFERS.get();
+
+            // Small files are read whole, rather than reading the middle twice.
+            if (size <= SAMPLE_BYTES * 2) {
+                readInto(digest, channel, buffer, 0, size);
+            }
+            else {
+                readInto(digest, channel, buffer, 0, SAMPLE_BYTES);
+                readInto(digest, channel, buffer, size - SAMPLE_BYTES, SAMPLE_BYTES);
+            }
+        }
+
+        StringBuilder fingerprint = new StringBuilder(Long.toString(size)).append(':');
+        for (byte b : digest.digest()) {
+            fingerprint.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Reads part of a file into a digest with positional reads, which leave
+     * the channel's position alone and need no mapping for a read this small.
+     */
+    private static void readInto(MessageDigest digest, FileChannel channel, ByteBuffer buffer,
+                                 long position, long length) throws IOException {
+        long end = position + length;
+
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                // The file shrank while being read.
+                break;
+            }
+
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+}
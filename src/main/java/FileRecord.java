@@ -0,0 +1,80 @@
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * What the library knows about a movie file from the last time it was seen:
+ * its size and modification time, its {@link FileFingerprint}, and the movie
+ * it was found to be. A file whose size and modification time still match
+ * has not changed, so a rescan can skip it, and a file found elsewhere with
+ * the same fingerprint is the same movie.
+ */
+public final class FileRecord {
+
+    private final String path;
+    private final long size;
+    private final long modified;
+    private final String fingerprint;
+    private final int movieId;
+
+    /**
+     * @param path The path of the file.
+     * @param size The size of the file in bytes.
+     * @param modified The modification time of the file, in milliseconds.
+     * @param fingerprint The fingerprint of the file, or null if it is not known.
+     * @param movieId The TheMovieDb id of the movie the file belongs to.
+     */
+    public FileRecord(String path, long size, long modified, String fingerprint, int movieId) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+        this.fingerprint = fingerprint;
+        this.movieId = movieId;
+    }
+
+    /**
+     * @param path The path of the file.
+     * @param attributes The attributes of the file.
+     * @param fingerprint The fingerprint of the file, or null if it is not known.
+     * @param movieId The TheMovieDb id of the movie the file belongs to.
+     */
+    public FileRecord(String path, BasicFileAttributes attributes, String fingerprint,
+                      int movieId) {
+        this(path, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                fingerprint, movieId);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    /**
+     * Returns whether a file still looks the way it did when recorded.
+     * @param attributes The current attributes of the file.
+     * @return True if the size and modification time are unchanged.
+     */
+    public boolean matches(BasicFileAttributes attributes) {
+        return attributes.size() == size
+                && attributes.lastModifiedTime().toMillis() == modified;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+}
@@ -0,0 +1,213 @@
+import javax.swing.ImageIcon;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+/**
+ * Fetches movie images in the background and caches them at two levels: the
+ * downloaded image files on disk, and the decoded, display-ready images in
+ * memory up to a fixed number of bytes.
+ */
+public class ImageCache {
+
+    /**
+     * Receives an image once it is available. Called from a background thread.
+     */
+    public interface ImageListener {
+
+        /**
+         * @param image The image, or null if it could not be fetched.
+         */
+        void imageLoaded(ImageIcon image);
+    }
+
+    /** Height images are displayed at: that of a w342 poster. */
+    public static final int DISPLAY_HEIGHT = 513;
+
+    public static final long DEFAULT_DISK_BYTES = 512L * 1024 * 1024;
+    public static final long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    private static final int FETCH_THREADS = 3;
+
+    private static final Metrics.Timer DECODE_TIMER = MovieManager.METRICS.timer("image.decode");
+    private static final Metrics.Counter DISK_HITS = MovieManager.METRICS.counter("image.disk.hit");
+    private static final Metrics.Counter DISK_MISSES = MovieManager.METRICS.counter("image.disk.miss");
+
+    private final MovieManager movieManager;
+    private final DiskCache diskCache;
+    private final long maxMemoryBytes;
+    private final SingleFlight<String, ImageIcon> fetches = new SingleFlight<>();
+    private final ExecutorService executor;
+
+    /** Decoded images, least recently used first. */
+    private final LinkedHashMap<String, ImageIcon> memoryCache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    /**
+     * @param movieManager The movie manager used to download images.
+     * @param directory The directory to keep downloaded images in.
+     * @param maxDiskBytes The size downloaded images may take on disk.
+     * @param maxMemoryBytes The size decoded images may take in memory.
+     */
+    public ImageCache(MovieManager movieManager, File directory, long maxDiskBytes,
+                      long maxMemoryBytes) {
+        this.movieManager = movieManager;
+        this.diskCache = new DiskCache(directory, maxDiskBytes);
+        this.maxMemoryBytes = maxMemoryBytes;
+
+        MovieManager.METRICS.gauge("image.memoryBytes", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                synchronized (ImageCache.this) {
+                    return memoryBytes;
+                }
+            }
+        });
+
+        executor = Executors.newFixedThreadPool(FETCH_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ImageCache");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns an image if it is already in memory.
+     * @param path The TheMovieDb path of the image.
+     * @param imageType The type of image.
+     * @return The image, or null if it has to be fetched.
+     */
+    public synchronized ImageIcon getCachedImage(String path, ImageType imageType) {
+        return memoryCache.get(key(path, imageType));
+    }
+
+    /**
+     * Fetches an image in the background, from memory, disk or the network.
+     * @param path The TheMovieDb path of the image.
+     * @param imageType The type of image.
+     * @param listener The listener to give the image to.
+     */
+    public void loadImage(final String path, final ImageType imageType,
+                          final ImageListener listener) {
+        if (path == null) {
+            listener.imageLoaded(null);
+            return;
+        }
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                listener.imageLoaded(getImage(path, imageType));
+            }
+        });
+    }
+
+    /**
+     * Returns an image, fetching it if it is not already in memory.
+     * Concurrent requests for the same image share one fetch.
+     * @param path The TheMovieDb path of the image.
+     * @param imageType The type of image.
+     * @return The image, or null if it could not be fetched.
+     */
+    public ImageIcon getImage(final String path, final ImageType imageType) {
+        final String key = key(path, imageType);
+
+        ImageIcon image = getCachedImage(path, imageType);
+        if (image != null) {
+            return image;
+        }
+
+        return fetches.execute(key, new Callable<ImageIcon>() {
+            @Override
+            public ImageIcon call() {
+                byte[] data = diskCache.read(key);
+                if (data != null) {
+                    DISK_HITS.increment();
+                }
+                else {
+                    DISK_MISSES.increment();
+                    data = download(path, imageType);
+                    if (data == null) {
+                        return null;
+                    }
+                    diskCache.write(key, data);
+                }
+
+                ImageIcon image = decode(data);
+                if (image != null) {
+                    putInMemory(key, image);
+                }
+                return image;
+            }
+        });
+    }
+
+    private byte[] download(String path, ImageType imageType) {
+        return movieManager.downloadImage(path, imageType.getSize());
+    }
+
+    private ImageIcon decode(byte[] data) {
+        long start = System.nanoTime();
+        try {
+            // Decode straight to the display height: backdrops to poster
+            // height, adjusting width as necessary, and posters as they are.
+            BufferedImage image = ImageScaler.decode(data, DISPLAY_HEIGHT);
+            if (image == null) {
+                MovieManager.LOGGER.log(Level.WARNING, "Images could not be parsed.");
+                return null;
+            }
+
+            return new ImageIcon(image);
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Images could not be parsed.");
+            return null;
+        }
+        finally {
+            DECODE_TIMER.stop(start);
+        }
+    }
+
+    private synchronized void putInMemory(String key, ImageIcon image) {
+        ImageIcon old = memoryCache.put(key, image);
+        if (old != null) {
+            memoryBytes -= sizeOf(old);
+        }
+        memoryBytes += sizeOf(image);
+
+        Iterator<Map.Entry<String, ImageIcon>> eldest = memoryCache.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            Map.Entry<String, ImageIcon> entry = eldest.next();
+            if (entry.getValue() == image) {
+                break;
+            }
+            memoryBytes -= sizeOf(entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Estimates the memory taken by a decoded image, at four bytes a pixel.
+     */
+    private static long sizeOf(ImageIcon image) {
+        return 4L * image.getIconWidth() * image.getIconHeight();
+    }
+
+    private static String key(String path, ImageType imageType) {
+        // Paths look like "/abc123.jpg".
+        return imageType.getSize() + "_" + path.replace('/', '_').replaceFirst("^_", "");
+    }
+
+}
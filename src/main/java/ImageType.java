@@ -1,3 +1,17 @@
 public enum ImageType {
-    BACKDROP, POSTER
-}
+    BACKDROP("w780"), POSTER("w342");
+
+    private final String size;
+
+    ImageType(String size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns the TheMovieDb size to fetch this type of image at.
+     * @return The size name.
+     */
+    public String getSize() {
+        return size;
+    }
+}
\ No newline at end of file
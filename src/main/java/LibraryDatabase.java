@@ -0,0 +1,896 @@
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Stores the movie library in an SQLite database. A single connection is kept
+ * open for the lifetime of the database, with its write statements prepared
+ * once and reused, so that adding or removing a movie costs one statement
+ * execution rather than a new connection.
+ *
+ * Movies are keyed by their TheMovieDb id, and saving a movie that is
+ * already stored replaces it. Rows stored before the id was known are keyed
+ * by name until their movie is looked up again.
+ *
+ * Alongside the movies the database keeps an index of the movie files
+ * found, see {@link FileRecord}, and the folders that have been scanned, so
+ * that a rescan only has to look at files that have changed.
+ *
+ * Each movie's cast and genres are kept both as text in its row, read at
+ * startup, and in indexed tables of people and genres with a row for each
+ * role, which {@link #queryMovies(MovieManager, MovieQuery, int, int)} uses to
+ * answer questions without reading every movie. The version of the tables is
+ * kept in the database's user_version, so that older databases are brought up
+ * to date once when they are opened.
+ */
+public class LibraryDatabase {
+
+    /** Separates the paths of a movie's files in the FILEPATH column. */
+    private static final String FILE_SEPARATOR = "\n";
+    /** Separates the names in the CAST and GENRES columns. */
+    private static final String NAME_SEPARATOR = ", ";
+
+    /**
+     * The version of the tables. Version 1 added the people, role and genre
+     * tables, and the indexes for queries.
+     */
+    private static final int SCHEMA_VERSION = 1;
+
+    /** The columns a movie is read from. CAST is quoted as it is also an operator. */
+    private static final String MOVIE_COLUMNS =
+            "TMDB_ID, NAME, FILEPATH, \"CAST\", YEAR, RATING, ADDED, GENRES, KEYWORDS";
+
+    private final String url;
+    private final Connection connection;
+    private final PreparedStatement addStatement;
+    private final PreparedStatement removeStatement;
+    private final PreparedStatement addFileStatement;
+    private final PreparedStatement removeFileStatement;
+    private final PreparedStatement addPersonStatement;
+    private final PreparedStatement addRoleStatement;
+    private final PreparedStatement removeRolesStatement;
+    private final PreparedStatement addGenreStatement;
+    private final PreparedStatement addMovieGenreStatement;
+    private final PreparedStatement removeMovieGenresStatement;
+
+    /**
+     * Opens the database, creating or updating its tables as necessary.
+     * @param fileName The file the database is stored in.
+     * @throws SQLException If the database could not be opened.
+     */
+    public LibraryDatabase(String fileName) throws SQLException {
+        boolean newDb = !new File(fileName).exists();
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+        }
+        catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver not found.", e);
+        }
+
+        url = "jdbc:sqlite:" + fileName;
+        connection = DriverManager.getConnection(url);
+        configure(connection);
+
+        if (newDb) createTables();
+        else migrateTables();
+
+        addStatement = connection.prepareStatement(
+                "INSERT OR REPLACE INTO MOVIES " +
+                "(ID, NAME, FILEPATH, CAST, TMDB_ID, YEAR, RATING, ADDED, GENRES, KEYWORDS, " +
+                "SORT_NAME) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+        );
+        removeStatement = connection.prepareStatement(
+                "DELETE FROM MOVIES " +
+                "WHERE ID = ? OR (TMDB_ID IS NULL AND NAME = ?)"
+        );
+        addPersonStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO PEOPLE (NAME) VALUES (?)"
+        );
+        addRoleStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO CAST_ROLES (MOVIE_ID, PERSON_ID, BILLING) " +
+                "SELECT ?, ID, ? FROM PEOPLE WHERE NAME = ?"
+        );
+        removeRolesStatement = connection.prepareStatement(
+                "DELETE FROM CAST_ROLES WHERE MOVIE_ID = ?"
+        );
+        addGenreStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO GENRES (NAME) VALUES (?)"
+        );
+        addMovieGenreStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO MOVIE_GENRES (MOVIE_ID, GENRE_ID) " +
+                "SELECT ?, ID FROM GENRES WHERE NAME = ?"
+        );
+        removeMovieGenresStatement = connection.prepareStatement(
+                "DELETE FROM MOVIE_GENRES WHERE MOVIE_ID = ?"
+        );
+        addFileStatement = connection.prepareStatement(
+                "INSERT OR REPLACE INTO FILES " +
+                "(PATH, SIZE, MODIFIED, FINGERPRINT, MOVIE_ID) " +
+                "VALUES (?, ?, ?, ?, ?)"
+        );
+        removeFileStatement = connection.prepareStatement(
+                "DELETE FROM FILES WHERE PATH = ?"
+        );
+    }
+
+    /**
+     * Tune the connection for a single local writer. The write-ahead log lets
+     * the startup load read while scans are writing, and a normal sync level
+     * is safe with it while avoiding a disk flush per statement.
+     */
+    private static void configure(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        statement.execute("PRAGMA journal_mode = WAL");
+        statement.execute("PRAGMA synchronous = NORMAL");
+        statement.execute("PRAGMA temp_store = MEMORY");
+        statement.execute("PRAGMA cache_size = 8000");
+        statement.close();
+    }
+
+    /**
+     * Setup new tables for a new database.
+     */
+    private void createTables() throws SQLException {
+        PreparedStatement createStatement = connection.prepareStatement(
+                "CREATE TABLE MOVIES (" +
+                "ID        INT   NOT NULL  PRIMARY KEY, " +
+                "NAME      TEXT  NOT NULL,              " +
+                "FILEPATH  TEXT,                        " +
+                "CAST      TEXT  NOT NULL,              " +
+                "TMDB_ID   INT,                         " +
+                "YEAR      INT,                         " +
+                "RATING    REAL,                        " +
+                "ADDED     INT,                         " +
+                "GENRES    TEXT,                        " +
+                "KEYWORDS  TEXT,                        " +
+                "SORT_NAME TEXT                        )"
+        );
+        createStatement.executeUpdate();
+        createStatement.close();
+
+        createFileTables();
+        createQueryTables();
+        setSchemaVersion(SCHEMA_VERSION);
+    }
+
+    /**
+     * Setup the file index tables, unless they are already there.
+     */
+    private void createFileTables() throws SQLException {
+        PreparedStatement filesStatement = connection.prepareStatement(
+                "CREATE TABLE IF NOT EXISTS FILES (" +
+                "PATH      TEXT  NOT NULL  PRIMARY KEY, " +
+                "SIZE      INT   NOT NULL,              " +
+                "MODIFIED  INT   NOT NULL,              " +
+                "FINGERPRINT TEXT,                      " +
+                "MOVIE_ID  INT   NOT NULL              )"
+        );
+        filesStatement.executeUpdate();
+        filesStatement.close();
+
+        PreparedStatement foldersStatement = connection.prepareStatement(
+                "CREATE TABLE IF NOT EXISTS FOLDERS (" +
+                "PATH      TEXT  NOT NULL  PRIMARY KEY )"
+        );
+        foldersStatement.executeUpdate();
+        foldersStatement.close();
+    }
+
+    /**
+     * Setup the people, role and genre tables, and the indexes used to query
+     * the library, unless they are already there.
+     */
+    private void createQueryTables() throws SQLException {
+        execute("CREATE TABLE IF NOT EXISTS PEOPLE (" +
+                "ID        INTEGER  PRIMARY KEY,        " +
+                "NAME      TEXT  NOT NULL  UNIQUE  COLLATE NOCASE )");
+        execute("CREATE TABLE IF NOT EXISTS CAST_ROLES (" +
+                "MOVIE_ID  INT   NOT NULL,              " +
+                "PERSON_ID INT   NOT NULL,              " +
+                "BILLING   INT   NOT NULL,              " +
+                "PRIMARY KEY (MOVIE_ID, PERSON_ID)     )");
+        execute("CREATE TABLE IF NOT EXISTS GENRES (" +
+                "ID        INTEGER  PRIMARY KEY,        " +
+                "NAME      TEXT  NOT NULL  UNIQUE  COLLATE NOCASE )");
+        execute("CREATE TABLE IF NOT EXISTS MOVIE_GENRES (" +
+                "MOVIE_ID  INT   NOT NULL,              " +
+                "GENRE_ID  INT   NOT NULL,              " +
+                "PRIMARY KEY (MOVIE_ID, GENRE_ID)      )");
+
+        // Finding a person's or a genre's movies starts from these.
+        execute("CREATE INDEX IF NOT EXISTS CAST_ROLES_PERSON ON CAST_ROLES (PERSON_ID, MOVIE_ID)");
+        execute("CREATE INDEX IF NOT EXISTS MOVIE_GENRES_GENRE ON MOVIE_GENRES (GENRE_ID, MOVIE_ID)");
+        execute("CREATE INDEX IF NOT EXISTS FILES_MOVIE ON FILES (MOVIE_ID)");
+        // Removing a movie also looks for a row keyed by its name.
+        execute("CREATE INDEX IF NOT EXISTS MOVIES_NAME ON MOVIES (NAME)");
+
+        // One for each sort order, in its order, so that a page is read
+        // straight from the index instead of sorting every match.
+        for (SortOrder order : SortOrder.values()) {
+            execute("CREATE INDEX IF NOT EXISTS MOVIES_BY_" + order.name()
+                    + " ON MOVIES (" + orderBy(order) + ")");
+        }
+    }
+
+    /**
+     * Returns the ORDER BY terms putting movies in a sort order, the same
+     * order as {@link SortOrder#getComparator()} bar the finer points of
+     * comparing accented titles.
+     */
+    private static String orderBy(SortOrder order) {
+        String byTitle = "SORT_NAME COLLATE NOCASE, YEAR, ID";
+        switch (order) {
+            case YEAR:
+                return "YEAR DESC, " + byTitle;
+            case RATING:
+                return "RATING DESC, " + byTitle;
+            case DATE_ADDED:
+                return "ADDED DESC, " + byTitle;
+            default:
+                return byTitle;
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        statement.executeUpdate(sql);
+        statement.close();
+    }
+
+    private int getSchemaVersion() throws SQLException {
+        Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery("PRAGMA user_version");
+        int version = result.next() ? result.getInt(1) : 0;
+        result.close();
+        statement.close();
+        return version;
+    }
+
+    private void setSchemaVersion(int version) throws SQLException {
+        execute("PRAGMA user_version = " + version);
+    }
+
+    /**
+     * Bring the tables of an existing database up to date.
+     */
+    private void migrateTables() throws SQLException {
+        Set<String> columnNames = getColumnNames("MOVIES");
+        addColumn("MOVIES", columnNames, "TMDB_ID", "INT");
+        addColumn("MOVIES", columnNames, "YEAR", "INT");
+        addColumn("MOVIES", columnNames, "RATING", "REAL");
+        addColumn("MOVIES", columnNames, "ADDED", "INT");
+        addColumn("MOVIES", columnNames, "GENRES", "TEXT");
+        addColumn("MOVIES", columnNames, "KEYWORDS", "TEXT");
+        addColumn("MOVIES", columnNames, "SORT_NAME", "TEXT");
+
+        rekeyMovies();
+
+        createFileTables();
+        addColumn("FILES", getColumnNames("FILES"), "FINGERPRINT", "TEXT");
+
+        int version = getSchemaVersion();
+        if (version < 1) {
+            createQueryTables();
+            fillQueryTables();
+        }
+        if (version < SCHEMA_VERSION) {
+            setSchemaVersion(SCHEMA_VERSION);
+            MovieManager.LOGGER.log(Level.INFO, "Updated database from version " + version
+                    + " to " + SCHEMA_VERSION + ".");
+        }
+    }
+
+    /**
+     * Fill in the sort names, people, roles and genres of the movies stored
+     * before there were tables for them, from the text in their rows. That
+     * text holds at most eleven names and splits names with a comma in them,
+     * so these roles are only a start: a movie's whole cast replaces them
+     * the next time the movie is saved with its details held, such as when
+     * its information changes.
+     */
+    private void fillQueryTables() throws SQLException {
+        PreparedStatement selectStatement = connection.prepareStatement(
+                "SELECT ID, NAME, \"CAST\", GENRES FROM MOVIES");
+        ResultSet rows = selectStatement.executeQuery();
+
+        List<Object[]> movies = new ArrayList<>();
+        while (rows.next()) {
+            movies.add(new Object[] {rows.getInt(1), rows.getString(2),
+                    rows.getString(3), rows.getString(4)});
+        }
+        rows.close();
+        selectStatement.close();
+
+        PreparedStatement sortNameStatement = connection.prepareStatement(
+                "UPDATE MOVIES SET SORT_NAME = ? WHERE ID = ?");
+        PreparedStatement personStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO PEOPLE (NAME) VALUES (?)");
+        PreparedStatement roleStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO CAST_ROLES (MOVIE_ID, PERSON_ID, BILLING) " +
+                "SELECT ?, ID, ? FROM PEOPLE WHERE NAME = ?");
+        PreparedStatement genreStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO GENRES (NAME) VALUES (?)");
+        PreparedStatement movieGenreStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO MOVIE_GENRES (MOVIE_ID, GENRE_ID) " +
+                "SELECT ?, ID FROM GENRES WHERE NAME = ?");
+
+        connection.setAutoCommit(false);
+        try {
+            for (Object[] movie : movies) {
+                int movieId = (Integer) movie[0];
+                sortNameStatement.setString(1, Movie.createSortTitle((String) movie[1]));
+                sortNameStatement.setInt(2, movieId);
+                sortNameStatement.executeUpdate();
+
+                addRoles(personStatement, roleStatement, movieId, splitNames((String) movie[2]));
+                addGenres(genreStatement, movieGenreStatement, movieId,
+                        splitNames((String) movie[3]));
+            }
+            connection.commit();
+        }
+        catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        finally {
+            connection.setAutoCommit(true);
+            sortNameStatement.close();
+            personStatement.close();
+            roleStatement.close();
+            genreStatement.close();
+            movieGenreStatement.close();
+        }
+
+        MovieManager.LOGGER.log(Level.INFO, "Indexed the cast and genres of "
+                + movies.size() + " movies.");
+    }
+
+    /**
+     * Split the text of a CAST or GENRES column into names.
+     */
+    private static List<String> splitNames(String names) {
+        if (names == null || names.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(names.split(NAME_SEPARATOR));
+    }
+
+    /**
+     * Record the people in a cast and their roles in a movie.
+     */
+    private static void addRoles(PreparedStatement personStatement,
+                                 PreparedStatement roleStatement, int movieId,
+                                 List<String> cast) throws SQLException {
+        int billing = 0;
+        for (String name : cast) {
+            if (name == null || name.isEmpty()) {
+                continue;
+            }
+            personStatement.setString(1, name);
+            personStatement.executeUpdate();
+
+            roleStatement.setInt(1, movieId);
+            roleStatement.setInt(2, billing++);
+            roleStatement.setString(3, name);
+            roleStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Record genres and that a movie is of them.
+     */
+    private static void addGenres(PreparedStatement genreStatement,
+                                  PreparedStatement movieGenreStatement, int movieId,
+                                  List<String> genres) throws SQLException {
+        for (String name : genres) {
+            if (name == null || name.isEmpty()) {
+                continue;
+            }
+            genreStatement.setString(1, name);
+            genreStatement.executeUpdate();
+
+            movieGenreStatement.setInt(1, movieId);
+            movieGenreStatement.setString(2, name);
+            movieGenreStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Read the names of the columns of a table, in upper case.
+     */
+    private Set<String> getColumnNames(String table) throws SQLException {
+        PreparedStatement infoStatement = connection.prepareStatement(
+                "PRAGMA table_info(" + table + ")");
+        ResultSet columns = infoStatement.executeQuery();
+
+        Set<String> columnNames = new HashSet<>();
+        while (columns.next()) {
+            columnNames.add(columns.getString("name").toUpperCase(Locale.ENGLISH));
+        }
+        columns.close();
+        infoStatement.close();
+
+        return columnNames;
+    }
+
+    /**
+     * Add a column to a table, unless it is already there.
+     */
+    private void addColumn(String table, Set<String> columnNames, String name, String type)
+            throws SQLException {
+        if (columnNames.contains(name)) {
+            return;
+        }
+
+        PreparedStatement alterStatement = connection.prepareStatement(
+                "ALTER TABLE " + table + " ADD COLUMN " + name + " " + type);
+        alterStatement.executeUpdate();
+        alterStatement.close();
+        MovieManager.LOGGER.log(Level.INFO, "Added " + name + " column to database.");
+    }
+
+    /**
+     * Re-key rows that were stored under a per-run hash code rather than their
+     * TheMovieDb id, merging the files of rows for the same movie.
+     */
+    private void rekeyMovies() throws SQLException {
+        PreparedStatement selectStatement = connection.prepareStatement(
+                "SELECT ID, TMDB_ID, FILEPATH FROM MOVIES " +
+                "WHERE TMDB_ID > 0 AND ID != TMDB_ID");
+        ResultSet rows = selectStatement.executeQuery();
+
+        List<Object[]> oldRows = new ArrayList<>();
+        while (rows.next()) {
+            oldRows.add(new Object[] {rows.getInt(1), rows.getInt(2), rows.getString(3)});
+        }
+        rows.close();
+        selectStatement.close();
+
+        if (oldRows.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement rekeyStatement = connection.prepareStatement(
+                "UPDATE OR IGNORE MOVIES SET ID = TMDB_ID WHERE ID = ?");
+        PreparedStatement mergeStatement = connection.prepareStatement(
+                "UPDATE MOVIES SET FILEPATH = " +
+                "CASE WHEN FILEPATH IS NULL THEN ? ELSE FILEPATH || ? END " +
+                "WHERE ID = ?");
+        PreparedStatement deleteStatement = connection.prepareStatement(
+                "DELETE FROM MOVIES WHERE ID = ?");
+
+        connection.setAutoCommit(false);
+        try {
+            for (Object[] row : oldRows) {
+                rekeyStatement.setInt(1, (Integer) row[0]);
+                if (rekeyStatement.executeUpdate() > 0) {
+                    continue;
+                }
+
+                // The movie is already stored under its id, so keep its files there.
+                String filePath = (String) row[2];
+                if (filePath != null && !filePath.equals("NULL")) {
+                    mergeStatement.setString(1, filePath);
+                    mergeStatement.setString(2, FILE_SEPARATOR + filePath);
+                    mergeStatement.setInt(3, (Integer) row[1]);
+                    mergeStatement.executeUpdate();
+                }
+                deleteStatement.setInt(1, (Integer) row[0]);
+                deleteStatement.executeUpdate();
+            }
+            connection.commit();
+        }
+        catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        finally {
+            connection.setAutoCommit(true);
+            rekeyStatement.close();
+            mergeStatement.close();
+            deleteStatement.close();
+        }
+
+        MovieManager.LOGGER.log(Level.INFO, "Re-keyed " + oldRows.size() + " movies by id.");
+    }
+
+    /**
+     * Adds movie information to the database.
+     * @param movie The movie to add.
+     */
+    public synchronized void addMovie(Movie movie) throws SQLException {
+        applyChanges(Collections.singletonList(new LibraryWriter.Change(movie, true)));
+    }
+
+    /**
+     * Removes a movie from the database.
+     * @param movie The movie to remove.
+     */
+    public synchronized void removeMovie(Movie movie) throws SQLException {
+        applyChanges(Collections.singletonList(new LibraryWriter.Change(movie, false)));
+    }
+
+    /**
+     * Applies a batch of changes in a single transaction. If any change fails
+     * the whole batch is rolled back.
+     * @param changes The changes to apply, in order.
+     */
+    public synchronized void applyChanges(List<LibraryWriter.Change> changes)
+            throws SQLException {
+        connection.setAutoCommit(false);
+
+        try {
+            for (LibraryWriter.Change change : changes) {
+                if (change.getFile() != null) {
+                    bindFile(change);
+                }
+                else if (change.isAdd()) {
+                    bindAdd(change);
+                    addStatement.executeUpdate();
+
+                    // Replace the roles and genres when they are known, and
+                    // otherwise keep those stored.
+                    bindRemoveRoles(change.getMovieId());
+                    if (change.getCastNames() != null) {
+                        removeRolesStatement.executeUpdate();
+                        addRoles(addPersonStatement, addRoleStatement,
+                                change.getMovieId(), change.getCastNames());
+                    }
+                    if (change.getGenreNames() != null) {
+                        removeMovieGenresStatement.executeUpdate();
+                        addGenres(addGenreStatement, addMovieGenreStatement,
+                                change.getMovieId(), change.getGenreNames());
+                    }
+                }
+                else {
+                    bindRemove(change);
+                    removeRolesStatement.executeUpdate();
+                    removeMovieGenresStatement.executeUpdate();
+                    removeStatement.executeUpdate();
+                }
+            }
+            connection.commit();
+        }
+        catch (SQLException | RuntimeException e) {
+            // Roll back whatever failed: turning auto-commit back on would
+            // otherwise commit half the batch.
+            connection.rollback();
+            throw e;
+        }
+        finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void bindAdd(LibraryWriter.Change movie) throws SQLException {
+        StringBuilder filePaths = new StringBuilder();
+        for (File movieFile : movie.getMovieFiles()) {
+            if (filePaths.length() > 0) {
+                filePaths.append(FILE_SEPARATOR);
+            }
+            filePaths.append(movieFile.getPath());
+        }
+
+        addStatement.setInt(1, movie.getMovieId());
+        addStatement.setString(2, movie.getTitle());
+        addStatement.setString(3, filePaths.length() > 0 ? filePaths.toString() : null);
+        addStatement.setString(4, movie.getCastList());
+        addStatement.setInt(5, movie.getMovieId());
+        addStatement.setInt(6, movie.getReleaseYear());
+        addStatement.setFloat(7, movie.getRating());
+        addStatement.setLong(8, movie.getDateAdded());
+        addStatement.setString(9, movie.getGenreList());
+        addStatement.setString(10, movie.getKeywordList());
+        addStatement.setString(11, Movie.createSortTitle(movie.getTitle()));
+    }
+
+    private void bindRemove(LibraryWriter.Change movie) throws SQLException {
+        removeStatement.setInt(1, movie.getMovieId());
+        removeStatement.setString(2, movie.getTitle());
+        bindRemoveRoles(movie.getMovieId());
+    }
+
+    /**
+     * Binds the statements removing a movie's roles and genres. Those of a
+     * row keyed by name are left behind, but as queries start from the movies
+     * they are never seen.
+     */
+    private void bindRemoveRoles(int movieId) throws SQLException {
+        removeRolesStatement.setInt(1, movieId);
+        removeMovieGenresStatement.setInt(1, movieId);
+    }
+
+    private void bindFile(LibraryWriter.Change change) throws SQLException {
+        FileRecord file = change.getFile();
+
+        if (change.isAdd()) {
+            addFileStatement.setString(1, file.getPath());
+            addFileStatement.setLong(2, file.getSize());
+            addFileStatement.setLong(3, file.getModified());
+            addFileStatement.setString(4, file.getFingerprint());
+            addFileStatement.setInt(5, file.getMovieId());
+            addFileStatement.executeUpdate();
+        }
+        else {
+            removeFileStatement.setString(1, file.getPath());
+            removeFileStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Reads all stored movies, sorted by name, and passes them to the listener
+     * a page at a time. The read uses its own connection so that it does not
+     * hold up writes while the listener is busy.
+     * @param movieManager The movie manager the movies belong to.
+     * @param pageSize The maximum number of movies in each page.
+     * @param listener The listener to receive each page.
+     */
+    public void loadMovies(MovieManager movieManager, int pageSize,
+                           MovieManager.MoviePageListener listener) throws SQLException {
+        Connection readConnection = DriverManager.getConnection(url);
+
+        try {
+            PreparedStatement selectStatement = readConnection.prepareStatement(
+                    "SELECT " + MOVIE_COLUMNS + " " +
+                    "FROM MOVIES " +
+                    "ORDER BY NAME COLLATE NOCASE"
+            );
+            selectStatement.setFetchSize(pageSize);
+            ResultSet rows = selectStatement.executeQuery();
+
+            List<Movie> page = new ArrayList<>(pageSize);
+            while (rows.next()) {
+                page.add(readMovie(movieManager, rows));
+
+                if (page.size() == pageSize) {
+                    listener.pageLoaded(page);
+                    page = new ArrayList<>(pageSize);
+                }
+            }
+
+            if (!page.isEmpty()) {
+                listener.pageLoaded(page);
+            }
+
+            rows.close();
+            selectStatement.close();
+        }
+        finally {
+            readConnection.close();
+        }
+    }
+
+    /**
+     * Reads a movie from a row of {@link #MOVIE_COLUMNS}.
+     */
+    private static Movie readMovie(MovieManager movieManager, ResultSet row)
+            throws SQLException {
+        List<File> movieFiles = new ArrayList<>();
+        String filePaths = row.getString(3);
+
+        if (filePaths != null) {
+            for (String filePath : filePaths.split(FILE_SEPARATOR)) {
+                // Older versions stored a missing file as "NULL".
+                if (!filePath.isEmpty() && !filePath.equals("NULL")) {
+                    movieFiles.add(new File(filePath));
+                }
+            }
+        }
+
+        // Columns added by later versions read as 0 for older rows.
+        return new Movie(movieManager, row.getInt(1), row.getString(2),
+                row.getInt(5), row.getFloat(6), row.getLong(7),
+                movieFiles, row.getString(4), row.getString(8), row.getString(9));
+    }
+
+    /**
+     * Finds the stored movies matching a query and reads a page of them. The
+     * database filters and sorts the movies using its indexes, so only the
+     * movies on the page are read. Uses its own connection, like
+     * {@link #loadMovies(MovieManager, int, MovieManager.MoviePageListener)}.
+     * @param movieManager The movie manager the movies belong to.
+     * @param query The query.
+     * @param offset The number of matching movies to skip.
+     * @param limit The maximum number of movies to read.
+     * @return The movies, in the query's order.
+     */
+    public List<Movie> queryMovies(MovieManager movieManager, MovieQuery query,
+                                   int offset, int limit) throws SQLException {
+        Connection readConnection = DriverManager.getConnection(url);
+
+        try {
+            List<Object> parameters = new ArrayList<>();
+            PreparedStatement selectStatement = readConnection.prepareStatement(
+                    "SELECT " + MOVIE_COLUMNS + " " +
+                    "FROM MOVIES " +
+                    where(query, parameters) +
+                    "ORDER BY " + orderBy(query.getOrder()) + " " +
+                    "LIMIT ? OFFSET ?"
+            );
+            parameters.add(limit);
+            parameters.add(offset);
+            bind(selectStatement, parameters);
+            ResultSet rows = selectStatement.executeQuery();
+
+            List<Movie> movies = new ArrayList<>(Math.min(limit, 1000));
+            while (rows.next()) {
+                movies.add(readMovie(movieManager, rows));
+            }
+
+            rows.close();
+            selectStatement.close();
+            return movies;
+        }
+        finally {
+            readConnection.close();
+        }
+    }
+
+    /**
+     * Counts the stored movies matching a query.
+     * @param query The query.
+     * @return The number of matching movies.
+     */
+    public int countMovies(MovieQuery query) throws SQLException {
+        Connection readConnection = DriverManager.getConnection(url);
+
+        try {
+            List<Object> parameters = new ArrayList<>();
+            PreparedStatement countStatement = readConnection.prepareStatement(
+                    "SELECT COUNT(*) FROM MOVIES " + where(query, parameters));
+            bind(countStatement, parameters);
+            ResultSet result = countStatement.executeQuery();
+
+            int count = result.next() ? result.getInt(1) : 0;
+            result.close();
+            countStatement.close();
+            return count;
+        }
+        finally {
+            readConnection.close();
+        }
+    }
+
+    /**
+     * Returns the WHERE clause for a query's conditions, adding the values to
+     * bind to the parameters.
+     */
+    private static String where(MovieQuery query, List<Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+
+        if (query.getPerson() != null) {
+            conditions.add("ID IN (SELECT R.MOVIE_ID FROM PEOPLE P " +
+                    "JOIN CAST_ROLES R ON R.PERSON_ID = P.ID WHERE P.NAME = ?)");
+            parameters.add(query.getPerson());
+        }
+        if (query.getGenre() != null) {
+            conditions.add("ID IN (SELECT MG.MOVIE_ID FROM GENRES G " +
+                    "JOIN MOVIE_GENRES MG ON MG.GENRE_ID = G.ID WHERE G.NAME = ?)");
+            parameters.add(query.getGenre());
+        }
+        if (query.hasYears()) {
+            conditions.add("YEAR BETWEEN ? AND ?");
+            parameters.add(query.getFromYear());
+            parameters.add(query.getToYear());
+        }
+        if (query.getMinRating() > 0) {
+            conditions.add("RATING >= ?");
+            parameters.add(query.getMinRating());
+        }
+
+        if (conditions.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder where = new StringBuilder("WHERE ");
+        for (String condition : conditions) {
+            if (where.length() > "WHERE ".length()) {
+                where.append(" AND ");
+            }
+            where.append(condition);
+        }
+        return where.append(" ").toString();
+    }
+
+    private static void bind(PreparedStatement statement, List<Object> parameters)
+            throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    /**
+     * Reads the file index.
+     * @return The recorded movie files.
+     */
+    public List<FileRecord> loadFiles() throws SQLException {
+        Connection readConnection = DriverManager.getConnection(url);
+
+        try {
+            PreparedStatement selectStatement = readConnection.prepareStatement(
+                    "SELECT PATH, SIZE, MODIFIED, FINGERPRINT, MOVIE_ID FROM FILES");
+            ResultSet rows = selectStatement.executeQuery();
+
+            List<FileRecord> files = new ArrayList<>();
+            while (rows.next()) {
+                files.add(new FileRecord(rows.getString(1), rows.getLong(2),
+                        rows.getLong(3), rows.getString(4), rows.getInt(5)));
+            }
+
+            rows.close();
+            selectStatement.close();
+            return files;
+        }
+        finally {
+            readConnection.close();
+        }
+    }
+
+    /**
+     * Reads the folders that have been scanned.
+     * @return The paths of the folders.
+     */
+    public synchronized List<String> loadFolders() throws SQLException {
+        PreparedStatement selectStatement = connection.prepareStatement(
+                "SELECT PATH FROM FOLDERS");
+        ResultSet rows = selectStatement.executeQuery();
+
+        List<String> folders = new ArrayList<>();
+        while (rows.next()) {
+            folders.add(rows.getString(1));
+        }
+
+        rows.close();
+        selectStatement.close();
+        return folders;
+    }
+
+    /**
+     * Records a folder as scanned.
+     * @param path The path of the folder.
+     */
+    public synchronized void addFolder(String path) throws SQLException {
+        PreparedStatement insertStatement = connection.prepareStatement(
+                "INSERT OR IGNORE INTO FOLDERS (PATH) VALUES (?)");
+        insertStatement.setString(1, path);
+        insertStatement.executeUpdate();
+        insertStatement.close();
+    }
+
+    /**
+     * Closes the database connection. The database cannot be used afterwards.
+     */
+    public synchronized void close() {
+        try {
+            addStatement.close();
+            removeStatement.close();
+            addFileStatement.close();
+            removeFileStatement.close();
+            addPersonStatement.close();
+            addRoleStatement.close();
+            removeRolesStatement.close();
+            addGenreStatement.close();
+            addMovieGenreStatement.close();
+            removeMovieGenresStatement.close();
+            connection.close();
+        }
+        catch (SQLException e) {
+            MovieManager.LOGGER.log(Level.WARNING, e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,322 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Watches the library folders and keeps the movie manager in step with the
+ * movie files in them.
+ *
+ * A file being copied in changes many times before it is complete, so
+ * changes are only acted on once a path has been quiet for
+ * {@link #QUIET_MS}. New and changed movie files are added with
+ * {@link MovieManager#addMovie(String, File)}, unless the file index shows
+ * them unchanged or their fingerprint matches a known file, and deleted
+ * files are taken from their movies. Changes are acted on one at a time on a
+ * single thread, so a burst of new files never has more than one lookup in
+ * flight. New paths are handled before deleted ones, so that a move is seen
+ * as a move rather than a removal and a new movie.
+ *
+ * Watching is not recursive on every platform, so each subfolder is
+ * registered separately. If the platform drops events, the folder they were
+ * for is walked again.
+ */
+public class LibraryWatcher {
+
+    private static final long QUIET_MS = 2000;
+    private static final long POLL_MS = 500;
+
+    private final MovieManager movieManager;
+    private final List<String> excludePatterns;
+    private final MovieFileWalker excludes;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> folders = new ConcurrentHashMap<>();
+    private final ExecutorService changeExecutor;
+    private final Thread watchThread;
+
+    /** When each changed path was last changed, guarded by itself. */
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a watcher that is not yet watching any folders.
+     * @param movieManager The movie manager to keep up to date.
+     * @param excludePatterns Glob patterns for paths to ignore, see {@link MovieFileWalker}.
+     * @throws IOException If the platform cannot watch folders.
+     */
+    public LibraryWatcher(MovieManager movieManager, List<String> excludePatterns)
+            throws IOException {
+        this.movieManager = movieManager;
+        this.excludePatterns = excludePatterns;
+        this.excludes = new MovieFileWalker(excludePatterns);
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        changeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LibraryWatcher-changes");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchEvents();
+            }
+        }, "LibraryWatcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Starts watching a folder and its subfolders, and brings the library up
+     * to date with the files in it.
+     * @param folder The folder to watch.
+     */
+    public void watch(final Path folder) {
+        changeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                syncFolder(folder.toAbsolutePath());
+            }
+        });
+    }
+
+    /**
+     * Stops watching. Changes not yet acted on are dropped.
+     */
+    public void close() {
+        closed = true;
+        watchThread.interrupt();
+        changeExecutor.shutdownNow();
+
+        try {
+            watchService.close();
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, e.getMessage());
+        }
+    }
+
+    private void watchEvents() {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    readEvents(key);
+                }
+                submitQuietChanges();
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException
+                | RejectedExecutionException e) {
+            // Closed.
+        }
+    }
+
+    private void readEvents(WatchKey key) {
+        Path folder = folders.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (folder == null) {
+                continue;
+            }
+
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so look at the whole folder again.
+                changed(folder);
+                continue;
+            }
+
+            Path path = folder.resolve((Path) event.context());
+            if (excludes.isExcluded(path)) {
+                continue;
+            }
+
+            // Register new folders straight away, so files copied into them are seen.
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path)) {
+                register(path);
+            }
+            changed(path);
+        }
+
+        if (!key.reset()) {
+            folders.remove(key);
+        }
+    }
+
+    private void changed(Path path) {
+        synchronized (pending) {
+            // Re-inserted so the map stays in order of last change.
+            pending.remove(path);
+            pending.put(path, System.nanoTime());
+        }
+    }
+
+    private void submitQuietChanges() {
+        long quietSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(QUIET_MS);
+        final List<Path> quiet = new ArrayList<>();
+
+        synchronized (pending) {
+            Iterator<Map.Entry<Path, Long>> entries = pending.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Path, Long> entry = entries.next();
+                if (entry.getValue() - quietSince > 0) {
+                    break;
+                }
+                quiet.add(entry.getKey());
+                entries.remove();
+            }
+        }
+
+        if (quiet.isEmpty()) {
+            return;
+        }
+
+        changeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                applyChanges(quiet);
+            }
+        });
+    }
+
+    private void applyChanges(List<Path> paths) {
+        List<Path> deleted = new ArrayList<>();
+
+        for (Path path : paths) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            }
+            catch (IOException e) {
+                deleted.add(path);
+                continue;
+            }
+
+            if (attributes.isDirectory()) {
+                syncFolder(path);
+            }
+            else if (attributes.isRegularFile()) {
+                addFile(path, attributes);
+            }
+        }
+
+        // Along with anything under them.
+        for (Path path : deleted) {
+            movieManager.removeMissingFiles(path.toFile(), Collections.<String>emptySet());
+        }
+    }
+
+    /**
+     * Registers a folder and its subfolders, adds the movie files in them
+     * that have changed, and removes the ones that have gone.
+     */
+    private void syncFolder(Path folder) {
+        if (closed) {
+            return;
+        }
+
+        register(folder);
+
+        final Map<Path, BasicFileAttributes> files = new LinkedHashMap<>();
+        final Set<String> seen = new HashSet<>();
+        new MovieFileWalker(excludePatterns).walk(folder, new MovieFileWalker.FileListener() {
+            @Override
+            public void fileFound(Path file, BasicFileAttributes attributes) {
+                synchronized (files) {
+                    seen.add(file.toString());
+                    if (!movieManager.isFileUnchanged(file, attributes)) {
+                        files.put(file, attributes);
+                    }
+                }
+            }
+        });
+
+        for (Map.Entry<Path, BasicFileAttributes> file : files.entrySet()) {
+            if (closed) {
+                return;
+            }
+            addFile(file.getKey(), file.getValue());
+        }
+
+        movieManager.removeMissingFiles(folder.toFile(), seen);
+    }
+
+    private void addFile(Path file, BasicFileAttributes attributes) {
+        String fileName = file.getFileName().toString();
+        if (!MovieFileWalker.isMovieFile(fileName)
+                || movieManager.isFileUnchanged(file, attributes)) {
+            return;
+        }
+
+        String fingerprint;
+        try {
+            fingerprint = FileFingerprint.of(file);
+        }
+        catch (IOException e) {
+            return;
+        }
+
+        if (!movieManager.claimKnownFile(file.toFile(), attributes, fingerprint)) {
+            movieManager.addMovie(fileName, file.toFile());
+        }
+    }
+
+    private void register(Path folder) {
+        try {
+            Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+                        throws IOException {
+                    if (closed || excludes.isExcluded(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    WatchKey key = dir.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                    folders.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException | ClosedWatchServiceException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not watch " + folder);
+        }
+    }
+
+}
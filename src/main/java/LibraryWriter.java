@@ -0,0 +1,351 @@
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Writes library changes to the database in the background. Changes are
+ * queued by the callers and written by a single thread in batches, each batch
+ * in one transaction, so a scan that finds thousands of movies commits a few
+ * hundred times rather than once per movie.
+ *
+ * A batch is written once it reaches {@link #BATCH_SIZE} changes, or once the
+ * oldest change in it has waited {@link #MAX_DELAY_MS}. Callers only wait if
+ * the queue is full, which means the disk is falling behind.
+ */
+public class LibraryWriter {
+
+    /**
+     * A single movie, or file index entry, to be added to or removed from
+     * the database. The movie's details are copied when the change is made,
+     * so later changes to the movie do not affect what is written.
+     */
+    public static class Change {
+
+        private final boolean add;
+        private final int movieId;
+        private final String title;
+        private final int releaseYear;
+        private final float rating;
+        private final long dateAdded;
+        private final List<File> movieFiles;
+        private final String castList;
+        private final String genreList;
+        private final String keywordList;
+        private final List<String> castNames;
+        private final List<String> genreNames;
+        private final FileRecord file;
+
+        Change(Movie movie, boolean add) {
+            this.add = add;
+            this.movieId = movie.getMovieId();
+            this.title = movie.getTitle();
+            this.releaseYear = movie.getReleaseYear();
+            this.rating = movie.getRating();
+            this.dateAdded = movie.getDateAdded();
+            this.movieFiles = add ? movie.getMovieFiles() : null;
+            this.castList = add ? movie.getCastList() : null;
+            this.genreList = add ? movie.getGenreList() : null;
+            this.keywordList = add ? movie.getKeywordList() : null;
+            this.castNames = add ? movie.getCastNames() : null;
+            this.genreNames = add ? movie.getGenreNames() : null;
+            this.file = null;
+        }
+
+        Change(FileRecord file, boolean add) {
+            this.add = add;
+            this.movieId = file.getMovieId();
+            this.title = null;
+            this.releaseYear = 0;
+            this.rating = 0;
+            this.dateAdded = 0;
+            this.movieFiles = null;
+            this.castList = null;
+            this.genreList = null;
+            this.keywordList = null;
+            this.castNames = null;
+            this.genreNames = null;
+            this.file = file;
+        }
+
+        private Change() {
+            this.add = false;
+            this.movieId = 0;
+            this.title = null;
+            this.releaseYear = 0;
+            this.rating = 0;
+            this.dateAdded = 0;
+            this.movieFiles = null;
+            this.castList = null;
+            this.genreList = null;
+            this.keywordList = null;
+            this.castNames = null;
+            this.genreNames = null;
+            this.file = null;
+        }
+
+        public boolean isAdd() {
+            return add;
+        }
+
+        public int getMovieId() {
+            return movieId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getReleaseYear() {
+            return releaseYear;
+        }
+
+        public float getRating() {
+            return rating;
+        }
+
+        public long getDateAdded() {
+            return dateAdded;
+        }
+
+        public List<File> getMovieFiles() {
+            return movieFiles;
+        }
+
+        public String getCastList() {
+            return castList;
+        }
+
+        public String getGenreList() {
+            return genreList;
+        }
+
+        public String getKeywordList() {
+            return keywordList;
+        }
+
+        /**
+         * @return The names of the whole cast, or null if they are not known
+         * and the stored roles should be kept.
+         */
+        public List<String> getCastNames() {
+            return castNames;
+        }
+
+        /**
+         * @return The names of the genres, or null if they are not known and
+         * the stored genres should be kept.
+         */
+        public List<String> getGenreNames() {
+            return genreNames;
+        }
+
+        /**
+         * @return The file index entry changed, or null if this changes a movie.
+         */
+        public FileRecord getFile() {
+            return file;
+        }
+
+        @Override
+        public String toString() {
+            return (add ? "add " : "remove ") + (file != null ? file : title);
+        }
+    }
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BATCH_SIZE = 500;
+    private static final long MAX_DELAY_MS = 200;
+    /** How long closing waits for the queued changes to be written. */
+    private static final long CLOSE_TIMEOUT_MS = 10000;
+
+    private static final Metrics.Timer BATCH_TIMER = MovieManager.METRICS.timer("db.batch");
+    private static final Metrics.Counter CHANGES = MovieManager.METRICS.counter("db.changes");
+
+    /** Queued to wake the writer thread when closing. */
+    private static final Change CLOSE = new Change();
+
+    private final LibraryDatabase libraryDatabase;
+    private final BlockingQueue<Change> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+
+    private volatile boolean closed;
+
+    public LibraryWriter(LibraryDatabase libraryDatabase) {
+        this.libraryDatabase = libraryDatabase;
+
+        MovieManager.METRICS.gauge("db.queue", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return queue.size();
+            }
+        });
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeChanges();
+            }
+        }, "LibraryWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a movie to be added to the database.
+     * @param movie The movie to add.
+     */
+    public void addMovie(Movie movie) {
+        enqueue(new Change(movie, true));
+    }
+
+    /**
+     * Queues a movie to be removed from the database.
+     * @param movie The movie to remove.
+     */
+    public void removeMovie(Movie movie) {
+        enqueue(new Change(movie, false));
+    }
+
+    /**
+     * Queues a file to be added to the file index, replacing any entry for
+     * the same path.
+     * @param file The file to add.
+     */
+    public void addFile(FileRecord file) {
+        enqueue(new Change(file, true));
+    }
+
+    /**
+     * Queues a file to be removed from the file index.
+     * @param file The file to remove.
+     */
+    public void removeFile(FileRecord file) {
+        enqueue(new Change(file, false));
+    }
+
+    private void enqueue(Change change) {
+        if (closed) {
+            MovieManager.LOGGER.log(Level.WARNING,
+                    "Library writer closed, change not saved: " + change);
+            return;
+        }
+
+        try {
+            queue.put(change);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes all queued changes and stops the writer thread. Changes queued
+     * after this are not saved. Waits at most {@link #CLOSE_TIMEOUT_MS}, so
+     * that exiting cannot hang on a writer that has stopped keeping up.
+     */
+    public void close() {
+        closed = true;
+
+        try {
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+            if (!queue.offer(CLOSE, CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                MovieManager.LOGGER.log(Level.SEVERE, "Library writer not keeping up, "
+                        + queue.size() + " changes not saved.");
+                writerThread.interrupt();
+                return;
+            }
+
+            writerThread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (writerThread.isAlive()) {
+                MovieManager.LOGGER.log(Level.SEVERE, "Library writer did not finish, "
+                        + queue.size() + " changes not saved.");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeChanges() {
+        List<Change> batch = new ArrayList<>(BATCH_SIZE);
+        boolean closing = false;
+
+        while (!closing) {
+            try {
+                Change change = queue.take();
+                long deadline = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MS);
+
+                // Gather more changes until the batch is full or has waited long enough.
+                while (change != null) {
+                    if (change == CLOSE) {
+                        closing = true;
+                        break;
+                    }
+
+                    batch.add(change);
+                    if (batch.size() >= BATCH_SIZE) {
+                        break;
+                    }
+
+                    change = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            }
+            catch (InterruptedException e) {
+                closing = true;
+            }
+
+            flush(batch);
+        }
+
+        // Anything queued alongside the close request.
+        queue.drainTo(batch);
+        batch.remove(CLOSE);
+        flush(batch);
+    }
+
+    private void flush(List<Change> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            libraryDatabase.applyChanges(batch);
+            CHANGES.add(batch.size());
+        }
+        catch (SQLException | RuntimeException e) {
+            // The batch was rolled back: write its changes one at a time so
+            // only the change that failed is lost. Runtime exceptions are
+            // caught too, as the writer thread must not die and leave the
+            // queue to fill.
+            MovieManager.LOGGER.log(Level.WARNING, "Batch of " + batch.size()
+                    + " changes failed, retrying one at a time: " + e);
+            applyEach(batch);
+        }
+        finally {
+            BATCH_TIMER.stop(start);
+        }
+
+        batch.clear();
+    }
+
+    private void applyEach(List<Change> batch) {
+        for (Change change : batch) {
+            try {
+                libraryDatabase.applyChanges(Collections.singletonList(change));
+                CHANGES.increment();
+            }
+            catch (SQLException | RuntimeException e) {
+                MovieManager.LOGGER.log(Level.SEVERE, "Change not saved: " + change, e);
+            }
+        }
+    }
+
+}
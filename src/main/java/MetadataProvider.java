@@ -0,0 +1,46 @@
+import com.omertron.themoviedbapi.MovieDbException;
+import com.omertron.themoviedbapi.model.MovieDb;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where movie information and images come from. The movie manager caches
+ * what a provider returns and limits the requests made to it, so a provider
+ * only has to answer each request as it is made.
+ *
+ * A provider reports a rate limited response the way TheMovieDb's does,
+ * through {@link TmdbHttpClient#getLastStatus()}, so that the
+ * {@link RequestLimiter} can back off and retry.
+ */
+public interface MetadataProvider {
+
+    /**
+     * Searches for a movie title.
+     * @param title The title to search for.
+     * @param year The release year of the movie, or 0 for any year.
+     * @return The matching movies, best first, with everything in
+     * {@link FetchProfile#LIST}.
+     * @throws MovieDbException If the search failed.
+     */
+    List<MovieDb> searchMovie(String title, int year) throws MovieDbException;
+
+    /**
+     * Retrieves the information of a movie.
+     * @param movieId The TheMovieDb id of the movie.
+     * @param profile The information to retrieve.
+     * @return The movie information.
+     * @throws MovieDbException If the information could not be retrieved.
+     */
+    MovieDb getMovieInfo(int movieId, FetchProfile profile) throws MovieDbException;
+
+    /**
+     * Retrieves an image.
+     * @param path The TheMovieDb path of the image.
+     * @param size The TheMovieDb size to retrieve the image at.
+     * @return The encoded image.
+     * @throws IOException If the image could not be retrieved.
+     */
+    byte[] getImage(String path, String size) throws IOException;
+
+}
@@ -0,0 +1,383 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+/**
+ * Counts and times what the library does, so that it can be seen where the
+ * time goes: waiting on TheMovieDb, writing to the database, decoding images
+ * or updating the window. Metrics are found by name and created on first
+ * use. Timers count events and keep a histogram of how long they took,
+ * counters count events that take no time worth measuring, such as cache
+ * hits, and gauges read a value when asked, such as the length of a queue.
+ *
+ * Recording is a few atomic additions, so timers can be left in hot paths.
+ * The metrics can be published over JMX, see {@link #register(String)}, and
+ * logged at intervals, see {@link #startSnapshots(long)}.
+ */
+public class Metrics implements MetricsMXBean {
+
+    /**
+     * Reads a value when the metrics are read. Called from any thread.
+     */
+    public interface Gauge {
+        long getValue();
+    }
+
+    /**
+     * Counts events.
+     */
+    public static class Counter {
+
+        private final AtomicLong count = new AtomicLong();
+
+        public void increment() {
+            count.incrementAndGet();
+        }
+
+        public void add(long amount) {
+            count.addAndGet(amount);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        private void reset() {
+            count.set(0);
+        }
+    }
+
+    /**
+     * Counts events and how long they took. Durations are kept in a
+     * histogram with four buckets for each power of two microseconds, so the
+     * percentiles are within about an eighth of the true value.
+     */
+    public static class Timer {
+
+        private static final int EXACT_MICROS = 4;
+        private static final int BUCKETS = 4 * 40;
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        /**
+         * Records an event that started at the given time and has just ended.
+         * @param startNanos The {@link System#nanoTime()} the event started at.
+         */
+        public void stop(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Records an event.
+         * @param nanos How long it took, in nanoseconds.
+         */
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            buckets.incrementAndGet(bucketOf(nanos / 1000));
+
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Returns the statistics of the events recorded so far. Events
+         * recorded meanwhile may be partly counted.
+         * @return The statistics.
+         */
+        public TimerStats getStats() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+
+            double maxMs = maxNanos.get() / 1e6;
+            long events = count.get();
+            return new TimerStats(events,
+                    events > 0 ? totalNanos.get() / 1e6 / events : 0,
+                    Math.min(maxMs, percentile(counts, total, 0.5)),
+                    Math.min(maxMs, percentile(counts, total, 0.9)),
+                    Math.min(maxMs, percentile(counts, total, 0.99)),
+                    maxMs);
+        }
+
+        private void reset() {
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        private static int bucketOf(long micros) {
+            if (micros < EXACT_MICROS) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int quarter = (int) (micros >>> (exponent - 2)) & 3;
+            return Math.min(BUCKETS - 1, 4 * (exponent - 1) + quarter);
+        }
+
+        /**
+         * Returns the middle of the bucket holding a percentile, in
+         * milliseconds.
+         */
+        private static double percentile(long[] counts, long total, double fraction) {
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            int bucket = 0;
+            while (bucket < BUCKETS - 1) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    break;
+                }
+                bucket++;
+            }
+
+            if (bucket < EXACT_MICROS) {
+                return (bucket + 0.5) / 1000;
+            }
+            int exponent = bucket / 4 + 1;
+            long width = 1L << (exponent - 2);
+            long lower = (4 + bucket % 4) * width;
+            return (lower + width / 2.0) / 1000;
+        }
+    }
+
+    /**
+     * The statistics of a timer, in milliseconds.
+     */
+    public static class TimerStats {
+
+        private final long count;
+        private final double meanMs;
+        private final double p50Ms;
+        private final double p90Ms;
+        private final double p99Ms;
+        private final double maxMs;
+
+        @ConstructorProperties({"count", "meanMs", "p50Ms", "p90Ms", "p99Ms", "maxMs"})
+        public TimerStats(long count, double meanMs, double p50Ms, double p90Ms,
+                          double p99Ms, double maxMs) {
+            this.count = count;
+            this.meanMs = meanMs;
+            this.p50Ms = p50Ms;
+            this.p90Ms = p90Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMs() {
+            return meanMs;
+        }
+
+        public double getP50Ms() {
+            return p50Ms;
+        }
+
+        public double getP90Ms() {
+            return p90Ms;
+        }
+
+        public double getP99Ms() {
+            return p99Ms;
+        }
+
+        public double getMaxMs() {
+            return maxMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    count, meanMs, p50Ms, p90Ms, p99Ms, maxMs);
+        }
+    }
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private ObjectName objectName;
+    private ScheduledExecutorService snapshots;
+
+    /**
+     * Returns the timer with a name, creating it if necessary.
+     * @param name The name of the timer.
+     * @return The timer.
+     */
+    public Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Returns the counter with a name, creating it if necessary.
+     * @param name The name of the counter.
+     * @return The counter.
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Adds a gauge, replacing any gauge with the same name.
+     * @param name The name of the gauge.
+     * @param gauge The gauge.
+     */
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getValue());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, TimerStats> getTimers() {
+        Map<String, TimerStats> values = new TreeMap<>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return values;
+    }
+
+    @Override
+    public String getSnapshot() {
+        StringBuilder snapshot = new StringBuilder();
+        for (Map.Entry<String, TimerStats> entry : getTimers().entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                snapshot.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+        }
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            snapshot.append(entry.getKey()).append(" count=").append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : getGauges().entrySet()) {
+            snapshot.append(entry.getKey()).append(" value=").append(entry.getValue()).append('\n');
+        }
+        return snapshot.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Publishes the metrics to the platform MBean server, for JConsole and
+     * the like, unless they already are.
+     * @param name The JMX object name to publish them under.
+     */
+    public synchronized void register(String name) {
+        if (objectName != null) {
+            return;
+        }
+
+        try {
+            objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        }
+        catch (JMException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not publish metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Logs a snapshot of the metrics at regular intervals, from a background
+     * thread, unless it is already being done.
+     * @param intervalSeconds The time between snapshots.
+     */
+    public synchronized void startSnapshots(long intervalSeconds) {
+        if (snapshots != null) {
+            return;
+        }
+
+        snapshots = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        snapshots.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (MovieManager.LOGGER.isLoggable(Level.INFO)) {
+                    MovieManager.LOGGER.log(Level.INFO, "Metrics:\n" + getSnapshot());
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,32 @@
+import java.util.Map;
+
+/**
+ * The library's metrics as published over JMX, see {@link Metrics}.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return The value of each counter, by name.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return The current value of each gauge, by name.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return The statistics of each timer, by name.
+     */
+    Map<String, Metrics.TimerStats> getTimers();
+
+    /**
+     * @return Every metric, a line each, as logged by the periodic snapshot.
+     */
+    String getSnapshot();
+
+    /**
+     * Sets the counters and timers back to zero.
+     */
+    void reset();
+}
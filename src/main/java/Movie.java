@@ -1,58 +1,338 @@
+import com.omertron.themoviedbapi.model.Genre;
+import com.omertron.themoviedbapi.model.Keyword;
 import com.omertron.themoviedbapi.model.MovieDb;
 import com.omertron.themoviedbapi.model.PersonCast;
 
-import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
-import java.awt.Image;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.ref.SoftReference;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.logging.Level;
+import java.util.Locale;
 
+/**
+ * A movie in the library. Only a small summary is held permanently: enough to
+ * list, sort and head the movie's page. The movie information from
+ * TheMovieDb, which can run to megabytes with its cast, images and other
+ * sections, is held through a soft reference, so it is dropped when memory is
+ * short and fetched again from the cache when it is next displayed.
+ */
 public class Movie implements Comparable<Movie> {
 
+    /** Articles ignored at the start of titles when sorting. */
+    static final String[] LEADING_ARTICLES = {"the ", "a ", "an "};
+
+    /** Compares titles in the user's language, ignoring case. Not thread safe. */
+    private static final Collator COLLATOR = Collator.getInstance();
+    static {
+        COLLATOR.setStrength(Collator.SECONDARY);
+    }
+
     private MovieManager movieManager;
-    private MovieDb movie;
-    private File movieFile;
-    private String castList;
-    private Map<ImageType, ImageIcon> images = new HashMap<>();
+    private SoftReference<MovieDb> movie;
+    private FetchProfile profile;
+    private int movieId;
+    private String title;
+    private CollationKey sortKey;
+    private int releaseYear;
+    private float rating;
+    private long dateAdded = System.currentTimeMillis();
+    private String backdropPath;
+    private String posterPath;
+    private List<File> movieFiles = new ArrayList<>(1);
+    private String castList = "";
+    private String genreList = "";
+    private String keywordList = "";
+
+    public Movie(MovieManager movieManager, MovieDb movie, FetchProfile profile,
+                 File movieFile) {
+
+        this.movieManager = movieManager;
+        if (movieFile != null) {
+            movieFiles.add(movieFile);
+        }
+        setMovie(movie, profile);
+    }
 
-    public Movie(MovieManager movieManager, MovieDb movie, File movieFile) {
+    /**
+     * Creates a movie from stored information only. The full movie information
+     * is not available until {@link #setMovie(MovieDb, FetchProfile)} is called.
+     */
+    public Movie(MovieManager movieManager, int movieId, String title, int releaseYear,
+                 float rating, long dateAdded, List<File> movieFiles, String castList,
+                 String genreList, String keywordList) {
 
         this.movieManager = movieManager;
-        this.movie = movie;
-        this.movieFile = movieFile;
-        createCast(movie);
-        createImages(movie);
+        this.movieId = movieId;
+        this.title = title;
+        this.sortKey = createSortKey(title);
+        this.releaseYear = releaseYear;
+        this.rating = rating;
+        this.dateAdded = dateAdded;
+        this.movieFiles.addAll(movieFiles);
+        this.castList = castList;
+        this.genreList = genreList != null ? genreList : "";
+        this.keywordList = keywordList != null ? keywordList : "";
+    }
+
+    /**
+     * Returns the movie information, if enough of it is held in memory.
+     * @param profile The information needed.
+     * @return The movie information, or null if it has not been loaded, was
+     * loaded for a smaller profile, or has since been dropped to free memory.
+     */
+    public synchronized MovieDb getMovie(FetchProfile profile) {
+        if (movie == null || !this.profile.includes(profile)) {
+            return null;
+        }
+        return movie.get();
+    }
+
+    /**
+     * Returns the names of the whole cast, in billing order, if the movie
+     * information held includes it. Unlike {@link #getCastList()} the names
+     * are not cut short at eleven, and a name with a comma in it stays whole.
+     * @return The names, or null if the cast is not held.
+     */
+    public List<String> getCastNames() {
+        MovieDb movieDb = getMovie(FetchProfile.DETAIL);
+        if (movieDb == null || movieDb.getCast() == null) {
+            return null;
+        }
+
+        List<String> names = new ArrayList<>(movieDb.getCast().size());
+        for (PersonCast person : movieDb.getCast()) {
+            names.add(person.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Returns the names of the movie's genres, if the movie information held
+     * includes them. Search results do not.
+     * @return The names, or null if the genres are not held.
+     */
+    public List<String> getGenreNames() {
+        MovieDb movieDb = getMovie(FetchProfile.LIST);
+        if (movieDb == null || movieDb.getGenres() == null || movieDb.getGenres().isEmpty()) {
+            return null;
+        }
+
+        List<String> names = new ArrayList<>(movieDb.getGenres().size());
+        for (Genre genre : movieDb.getGenres()) {
+            names.add(genre.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Fills in the movie information and updates the summary from it. The
+     * cast list is only updated if the profile includes the cast, and the
+     * genres and keywords only if the information has them. If the movie is
+     * in a {@link MovieIndex} it must be removed while this is called.
+     * @param movie The movie information to use.
+     * @param profile The profile the information was fetched for.
+     */
+    public synchronized void setMovie(MovieDb movie, FetchProfile profile) {
+        this.movie = new SoftReference<>(movie);
+        this.profile = profile;
+        this.movieId = movie.getId();
+        this.title = movie.getTitle();
+        this.sortKey = createSortKey(title);
+        this.releaseYear = parseYear(movie.getReleaseDate());
+        this.rating = movie.getVoteAverage();
+        this.backdropPath = movie.getBackdropPath();
+        this.posterPath = movie.getPosterPath();
+
+        if (profile.includes(FetchProfile.DETAIL)) {
+            createCast(movie);
+        }
+        if (movie.getGenres() != null && !movie.getGenres().isEmpty()) {
+            createGenres(movie);
+        }
+        List<Keyword> keywords = getKeywords(movie, profile);
+        if (!keywords.isEmpty()) {
+            createKeywords(keywords);
+        }
+    }
+
+    /**
+     * Returns whether enough movie information is held in memory.
+     * @param profile The information needed.
+     * @return True if the movie information is available.
+     */
+    public synchronized boolean isLoaded(FetchProfile profile) {
+        return getMovie(profile) != null;
+    }
+
+    /**
+     * Returns the TheMovieDb id of this movie, or 0 if it is not known.
+     * @return The TheMovieDb id.
+     */
+    public synchronized int getMovieId() {
+        return movieId;
+    }
+
+    public synchronized String getTitle() {
+        return title;
+    }
+
+    /**
+     * Returns the key this movie is sorted by in title order.
+     * @return The collation key of the title without any leading article.
+     */
+    public synchronized CollationKey getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * Returns the year this movie was released.
+     * @return The release year, or 0 if it is not known.
+     */
+    public synchronized int getReleaseYear() {
+        return releaseYear;
     }
 
-    public MovieDb getMovie() {
-        return movie;
+    /**
+     * Returns the average rating of this movie on TheMovieDb.
+     * @return The rating out of ten, or 0 if it is not known.
+     */
+    public synchronized float getRating() {
+        return rating;
     }
 
-    public File getMovieFile() {
-        return movieFile;
+    /**
+     * Returns when this movie was added to the library.
+     * @return The time in milliseconds since the epoch, or 0 if it is not known.
+     */
+    public long getDateAdded() {
+        return dateAdded;
     }
 
-    public String getCastList() {
+    /**
+     * Returns the first file of this movie.
+     * @return The file, or null if the movie has no files.
+     */
+    public synchronized File getMovieFile() {
+        return movieFiles.isEmpty() ? null : movieFiles.get(0);
+    }
+
+    /**
+     * Returns all files of this movie, such as the parts of a multi-part rip
+     * or duplicate copies.
+     * @return The files, in the order they were added.
+     */
+    public synchronized List<File> getMovieFiles() {
+        return Collections.unmodifiableList(new ArrayList<>(movieFiles));
+    }
+
+    /**
+     * Adds a file to this movie, if it does not already have it.
+     * @param movieFile The file to add.
+     * @return True if the file was added.
+     */
+    public synchronized boolean addMovieFile(File movieFile) {
+        if (movieFiles.contains(movieFile)) {
+            return false;
+        }
+        return movieFiles.add(movieFile);
+    }
+
+    /**
+     * Removes a file from this movie.
+     * @param movieFile The file to remove.
+     * @return True if the movie had the file.
+     */
+    public synchronized boolean removeMovieFile(File movieFile) {
+        return movieFiles.remove(movieFile);
+    }
+
+    public synchronized String getCastList() {
         return castList;
     }
 
-    public ImageIcon getImage(ImageType imageType) {
-        return images.get(imageType);
+    /**
+     * Returns the genres of this movie, such as "Drama, Thriller".
+     * @return The genres separated by commas, or an empty string if they are
+     * not known.
+     */
+    public synchronized String getGenreList() {
+        return genreList;
+    }
+
+    /**
+     * Returns the TheMovieDb keywords of this movie.
+     * @return The keywords separated by commas, or an empty string if they
+     * are not known.
+     */
+    public synchronized String getKeywordList() {
+        return keywordList;
+    }
+
+    /**
+     * Returns the TheMovieDb path of one of this movie's images.
+     * @param imageType The type of image.
+     * @return The image path, or null if it is not known.
+     */
+    public synchronized String getImagePath(ImageType imageType) {
+        return imageType == ImageType.BACKDROP ? backdropPath : posterPath;
     }
 
     @Override
     public String toString() {
-        return getMovie().getTitle();
+        return getTitle();
     }
 
     @Override
     public int compareTo(Movie o) {
-        return movie.getTitle().compareTo(o.getMovie().getTitle());
+        return SortOrder.TITLE.getComparator().compare(this, o);
+    }
+
+    /**
+     * Creates the key a title is sorted by: ignoring case and any leading
+     * "The", "A" or "An".
+     * @param title The title.
+     * @return The collation key.
+     */
+    static CollationKey createSortKey(String title) {
+        String sortTitle = createSortTitle(title);
+
+        synchronized (COLLATOR) {
+            return COLLATOR.getCollationKey(sortTitle);
+        }
+    }
+
+    /**
+     * Returns a title without any leading "The", "A" or "An", as it is sorted.
+     * @param title The title.
+     * @return The title to sort by.
+     */
+    static String createSortTitle(String title) {
+        String sortTitle = title.trim();
+        String lowerCase = sortTitle.toLowerCase(Locale.ENGLISH);
+
+        for (String article : LEADING_ARTICLES) {
+            if (lowerCase.startsWith(article) && lowerCase.length() > article.length()) {
+                return sortTitle.substring(article.length()).trim();
+            }
+        }
+        return sortTitle;
+    }
+
+    static int parseYear(String releaseDate) {
+        // Release dates look like "2001-12-19".
+        if (releaseDate == null || releaseDate.length() < 4) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(releaseDate.substring(0, 4));
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     private void createCast(MovieDb movie) {
@@ -74,27 +354,42 @@ public class Movie implements Comparable<Movie> {
         castList = castListBuilder.toString();
     }
 
-    private void createImages(MovieDb movie) {
-
-        BufferedImage backdrop = null;
-        BufferedImage poster = null;
-        try {
-            backdrop = ImageIO.read(movieManager.getImageUrl(
-                    movie.getBackdropPath(), "w780"));
-            poster = ImageIO.read(movieManager.getImageUrl(
-                    movie.getPosterPath(), "w342"));
-        } catch (IOException e) {
-            MovieManager.LOGGER.log(Level.WARNING, "Images could not be parsed.");
+    private void createGenres(MovieDb movie) {
+        StringBuilder genreListBuilder = new StringBuilder();
+        for (Genre genre : movie.getGenres()) {
+            if (genreListBuilder.length() > 0) {
+                genreListBuilder.append(", ");
+            }
+            genreListBuilder.append(genre.getName());
         }
+        genreList = genreListBuilder.toString();
+    }
 
+    private void createKeywords(List<Keyword> keywords) {
+        StringBuilder keywordListBuilder = new StringBuilder();
+        for (Keyword keyword : keywords) {
+            if (keywordListBuilder.length() > 0) {
+                keywordListBuilder.append(", ");
+            }
+            keywordListBuilder.append(keyword.getName());
+        }
+        keywordList = keywordListBuilder.toString();
+    }
 
-        // Scale image to poster height, adjusting width as necessary (via -1).
-        ImageIcon backdropImage = new ImageIcon(backdrop.getScaledInstance(
-                -1, poster.getHeight(), Image.SCALE_SMOOTH));
-        ImageIcon posterImage = new ImageIcon(poster);
+    /**
+     * Returns a movie's keywords, or an empty list if they were not fetched.
+     * MovieDb.getKeywords() in themoviedbapi 3.6 reads the list from its
+     * keywords wrapper without checking that the wrapper is there, so it
+     * throws for information fetched without keywords; it is only called for
+     * profiles that include them. See also {@link MovieDbCache#getMovie}.
+     */
+    private static List<Keyword> getKeywords(MovieDb movie, FetchProfile profile) {
+        if (!profile.includes(FetchProfile.DETAIL)) {
+            return Collections.emptyList();
+        }
 
-        images.put(ImageType.BACKDROP, backdropImage);
-        images.put(ImageType.POSTER, posterImage);
+        List<Keyword> keywords = movie.getKeywords();
+        return keywords != null ? keywords : Collections.<Keyword>emptyList();
     }
 
 }
\ No newline at end of file
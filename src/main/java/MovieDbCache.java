@@ -0,0 +1,223 @@
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.omertron.themoviedbapi.model.MovieDb;
+import com.omertron.themoviedbapi.wrapper.AbstractWrapper;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+
+/**
+ * An on-disk cache of TheMovieDb responses, so that looking up a movie again
+ * does not need the network. Search results are kept by normalised query and
+ * movie information by TheMovieDb id and {@link FetchProfile}, one JSON file
+ * per response.
+ *
+ * Entries older than their time to live are not returned by the normal get
+ * methods, but are kept so they can still be used when TheMovieDb cannot be
+ * reached. When the cache grows past its size limit the least recently used
+ * entries are deleted, see {@link DiskCache}.
+ */
+public class MovieDbCache {
+
+    /**
+     * The wrapper classes carry a logger field, which must not be stored.
+     */
+    @JsonIgnoreProperties({"log"})
+    private static abstract class WrapperMixIn {
+    }
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    public static final long SEARCH_TIME_TO_LIVE = 7 * DAY_MS;
+    public static final long MOVIE_TIME_TO_LIVE = 30 * DAY_MS;
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private final DiskCache diskCache;
+    private final ObjectMapper mapper;
+    private final JavaType searchType;
+
+    /**
+     * Opens a cache in the given directory, creating it if necessary.
+     * @param directory The directory to keep cached responses in.
+     * @param maxBytes The size the cache is allowed to grow to.
+     */
+    public MovieDbCache(File directory, long maxBytes) {
+        diskCache = new DiskCache(directory, maxBytes);
+
+        // Use the fields directly: the getters and setters of MovieDb do not
+        // match up for the appended sections such as casts and keywords.
+        mapper = new ObjectMapper();
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.addMixInAnnotations(AbstractWrapper.class, WrapperMixIn.class);
+        searchType = mapper.getTypeFactory().constructCollectionType(List.class, MovieDb.class);
+    }
+
+    /**
+     * Normalises a search query so that trivially different spellings of the
+     * same title share a cache entry.
+     * @param query The query to normalise.
+     * @return The query in lower case with punctuation and extra spaces removed.
+     */
+    public static String normaliseQuery(String query) {
+        String normalised = Normalizer.normalize(query, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ENGLISH);
+        StringBuilder builder = new StringBuilder(normalised.length());
+
+        for (int i = 0; i < normalised.length(); i++) {
+            char c = normalised.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                builder.append(c);
+            }
+            else if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ') {
+                builder.append(' ');
+            }
+        }
+
+        int length = builder.length();
+        if (length > 0 && builder.charAt(length - 1) == ' ') {
+            builder.setLength(length - 1);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns cached search results for a query.
+     * @param query The search query.
+     * @param year The release year searched for, or 0 for any year.
+     * @param allowExpired Whether to return results older than their time to live.
+     * @return The cached results, or null if there are none.
+     */
+    public List<MovieDb> getSearch(String query, int year, boolean allowExpired) {
+        return read(searchFile(query, year), searchType,
+                allowExpired ? Long.MAX_VALUE : SEARCH_TIME_TO_LIVE);
+    }
+
+    public void putSearch(String query, int year, List<MovieDb> results) {
+        write(searchFile(query, year), results);
+    }
+
+    /**
+     * Returns cached movie information, from an entry for the given profile or
+     * for any larger one. Entries missing a section the given profile now
+     * includes, such as detail entries cached before keywords were added to
+     * {@link FetchProfile#DETAIL}, are not used for it.
+     * @param movieId The TheMovieDb id of the movie.
+     * @param profile The information needed.
+     * @param allowExpired Whether to return information older than its time to live.
+     * @return The cached information, or null if there is none.
+     */
+    public MovieDb getMovie(int movieId, FetchProfile profile, boolean allowExpired) {
+        for (FetchProfile cached : FetchProfile.values()) {
+            if (!cached.includes(profile)) {
+                continue;
+            }
+
+            JsonNode data = readData(movieFile(movieId, cached),
+                    allowExpired ? Long.MAX_VALUE : MOVIE_TIME_TO_LIVE);
+            if (data == null || !hasSections(data, profile)) {
+                continue;
+            }
+
+            MovieDb movie = convert(movieFile(movieId, cached), data,
+                    mapper.constructType(MovieDb.class));
+            if (movie != null) {
+                return movie;
+            }
+        }
+
+        return null;
+    }
+
+    public void putMovie(int movieId, FetchProfile profile, MovieDb movie) {
+        write(movieFile(movieId, profile), movie);
+    }
+
+    private String searchFile(String query, int year) {
+        // Searches for any year keep the names they had before years were searched.
+        String key = year > 0 ? normaliseQuery(query) + "|" + year : normaliseQuery(query);
+        return "search-" + DigestUtils.sha1Hex(key) + ".json";
+    }
+
+    private String movieFile(int movieId, FetchProfile profile) {
+        return "movie-" + movieId + "-" + profile.name().toLowerCase(Locale.ENGLISH) + ".json";
+    }
+
+    /**
+     * Returns whether cached movie information has the appended sections the
+     * library reads without checking for, see {@link Movie#setMovie}.
+     */
+    private static boolean hasSections(JsonNode data, FetchProfile profile) {
+        return !profile.includes(FetchProfile.DETAIL)
+                || (data.has("casts") && data.has("keywords"));
+    }
+
+    private <T> T read(String name, JavaType type, long timeToLive) {
+        JsonNode data = readData(name, timeToLive);
+        return data != null ? this.<T>convert(name, data, type) : null;
+    }
+
+    /**
+     * Returns the data of an entry, or null if there is none or it is older
+     * than its time to live.
+     */
+    private JsonNode readData(String name, long timeToLive) {
+        byte[] data = diskCache.read(name);
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            JsonNode node = mapper.readTree(data);
+            if (System.currentTimeMillis() - node.path("fetched").asLong() > timeToLive) {
+                return null;
+            }
+            return node.get("data");
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not parse cache entry " + name);
+            diskCache.remove(name);
+            return null;
+        }
+    }
+
+    private <T> T convert(String name, JsonNode data, JavaType type) {
+        try {
+            return mapper.readValue(mapper.treeAsTokens(data), type);
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not parse cache entry " + name);
+            diskCache.remove(name);
+            return null;
+        }
+    }
+
+    private void write(String name, Object value) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("fetched", System.currentTimeMillis());
+        node.put("data", mapper.valueToTree(value));
+
+        try {
+            diskCache.write(name, mapper.writeValueAsBytes(node));
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not serialise cache entry " + name);
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+
+/**
+ * Finds movie files under a folder. Subfolders are listed in parallel on a
+ * fork/join pool, each file's attributes are read once, and files are passed
+ * to a listener as they are found rather than collected first.
+ *
+ * Symbolic links to folders are followed, but each folder is only visited
+ * once, so links pointing back up the tree do not loop. Paths matching any
+ * of the exclude patterns are skipped, along with everything under them.
+ *
+ * A walker remembers the folders it has visited, so each is used for one walk.
+ */
+public class MovieFileWalker {
+
+    /**
+     * Receives the movie files found. Called from the walker's threads, so it
+     * must be thread safe.
+     */
+    public interface FileListener {
+
+        /**
+         * @param file The movie file found.
+         * @param attributes The attributes of the file.
+         */
+        void fileFound(Path file, BasicFileAttributes attributes);
+    }
+
+    private static final Set<String> MOVIE_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "mp4", "avi", "flv", "webm", "ogg", "mov", "3gp", "wmv",
+            "mkv", "m4v", "mpg", "mpeg"));
+
+    private static final int PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final List<PathMatcher> excludes = new ArrayList<>();
+    private final Set<Object> visitedFolders =
+            Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+    private volatile boolean cancelled;
+
+    /**
+     * @param excludePatterns Glob patterns, such as "**&#47;Extras", for paths to skip.
+     */
+    public MovieFileWalker(List<String> excludePatterns) {
+        for (String pattern : excludePatterns) {
+            excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+    }
+
+    /**
+     * Returns whether a file name has one of the movie file extensions.
+     * @param fileName The name of the file.
+     * @return True if the file is a movie file.
+     */
+    public static boolean isMovieFile(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) {
+            return false;
+        }
+        return MOVIE_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Walks a folder and its subfolders, returning once they have all been
+     * listed or the walk is cancelled.
+     * @param folder The folder to walk.
+     * @param listener The listener to pass movie files to.
+     */
+    public void walk(Path folder, FileListener listener) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(folder, BasicFileAttributes.class);
+        }
+        catch (IOException e) {
+            MovieManager.LOGGER.log(Level.WARNING, "Could not read folder " + folder);
+            return;
+        }
+
+        if (!firstVisit(folder, attributes)) {
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            pool.invoke(new FolderTask(folder, listener));
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops the walk. Folders already being listed are finished.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether a path matches one of the exclude patterns.
+     * @param path The path to check.
+     * @return True if the path is skipped.
+     */
+    public boolean isExcluded(Path path) {
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether this is the first visit to a folder, telling folders
+     * apart by their file key where the file system has one.
+     */
+    private boolean firstVisit(Path folder, BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        if (key == null) {
+            try {
+                key = folder.toRealPath();
+            }
+            catch (IOException e) {
+                return false;
+            }
+        }
+        return visitedFolders.add(key);
+    }
+
+    /**
+     * Lists one folder, passing on its movie files and forking a task for
+     * each of its subfolders.
+     */
+    private class FolderTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path folder;
+        private final FileListener listener;
+
+        private FolderTask(Path folder, FileListener listener) {
+            this.folder = folder;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+
+            List<FolderTask> subfolders = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                for (Path entry : entries) {
+                    if (cancelled) {
+                        break;
+                    }
+                    if (isExcluded(entry)) {
+                        continue;
+                    }
+
+                    BasicFileAttributes attributes;
+                    try {
+                        // Follows links, so a link to a folder reads as a folder.
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    }
+                    catch (IOException e) {
+                        // A broken link, or a file deleted since listing.
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        if (!firstVisit(entry, attributes)) {
+                            continue;
+                        }
+
+                        FolderTask task = new FolderTask(entry, listener);
+                        task.fork();
+                        subfolders.add(task);
+                    }
+                    else if (attributes.isRegularFile()
+                            && isMovieFile(entry.getFileName().toString())) {
+                        listener.fileFound(entry, attributes);
+                    }
+                }
+            }
+            catch (IOException e) {
+                MovieManager.LOGGER.log(Level.WARNING, "Could not list folder " + folder);
+            }
+
+            for (FolderTask task : subfolders) {
+                task.join();
+            }
+        }
+    }
+
+}
@@ -1,17 +1,26 @@
+import com.omertron.themoviedbapi.MovieDbException;
+import com.omertron.themoviedbapi.model.MovieDb;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
 public class MovieGui {
@@ -21,8 +30,18 @@ public class MovieGui {
     private JPanel movieEnterPanel;
     private JTextField movieEnterTextField;
     private JButton addMovieButton;
+    private JPopupMenu suggestionPopup;
+    private DefaultListModel<MovieDb> suggestionListModel;
+    private JList<MovieDb> suggestionList;
+    private Timer suggestionTimer;
+    private Future<?> pendingSuggestions;
 
     private JButton scanButton;
+    private MovieScanner movieScanner;
+    private final AtomicReference<int[]> scanProgress = new AtomicReference<>();
+    private JCheckBox watchCheckBox;
+    private JComboBox<SortOrder> sortComboBox;
+    private JTextField filterTextField;
 
     private JPanel movieListPanel;
     private MovieListModel movieListModel;
@@ -39,9 +58,37 @@ public class MovieGui {
     private JTextPane overviewTextArea;
     private JTextPane castTextArea;
 
-    private MovieManager movieManager = new MovieManager();
+    /** Written on the event dispatch thread, read by detail loads too. */
+    private volatile Movie displayedMovie;
+    private ImageIcon backdropPlaceholder;
+    private ImageIcon posterPlaceholder;
 
-    private static final ExecutorService EXECUTOR_SERVICE = Executors.newCachedThreadPool();
+    private MovieManager movieManager;
+
+    /**
+     * Loads the details of the selected movie, one at a time: scrolling
+     * through the list queues a load per selection, and loads for movies no
+     * longer shown are skipped.
+     */
+    private static final ExecutorService DETAIL_EXECUTOR =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MovieGui details");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final int LOAD_PAGE_SIZE = 250;
+
+    /** How long typing has to pause for before suggestions are searched for. */
+    private static final int SUGGESTION_DELAY_MS = 250;
+    private static final int MIN_SUGGESTION_LENGTH = 2;
+    private static final int MAX_SUGGESTION_ROWS = 8;
+
+    private static final Metrics.Timer CHANGE_MOVIE_TIMER = MovieManager.METRICS.timer("gui.changeMovie");
+    private static final Metrics.Timer LIST_FLUSH_TIMER = MovieManager.METRICS.timer("gui.listFlush");
 
     /**
      * Launch the application.
@@ -61,6 +108,17 @@ public class MovieGui {
      * Create the application.
      */
     public MovieGui() {
+        try {
+            movieManager = new MovieManager();
+        }
+        catch (MovieDbException e) {
+            MovieManager.LOGGER.log(Level.SEVERE, "Could not initialise api.");
+            JOptionPane.showMessageDialog(null,
+                    "Please add an API key for TheMovieDb in api.key",
+                    "No API key found", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
+
         initialize();
     }
 
@@ -88,9 +146,75 @@ public class MovieGui {
                     addMovie();
                 }
             }
+
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!suggestionPopup.isVisible()) {
+                    return;
+                }
+
+                int selected = suggestionList.getSelectedIndex();
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        moveSuggestionSelection(selected + 1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        moveSuggestionSelection(selected - 1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        hideSuggestions();
+                        e.consume();
+                        break;
+                }
+            }
+        });
+        movieEnterTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                movieNameChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                movieNameChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
         });
         movieEnterPanel.add(movieEnterTextField, "cell 0 0, grow");
 
+        suggestionListModel = new DefaultListModel<>();
+        suggestionList = new JList<>(suggestionListModel);
+        suggestionList.setCellRenderer(new SuggestionRenderer());
+        suggestionList.setFocusable(false);
+        suggestionList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = suggestionList.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    suggestionList.setSelectedIndex(index);
+                    addMovie();
+                }
+            }
+        });
+
+        // The popup must not take the focus, so that typing carries on.
+        suggestionPopup = new JPopupMenu();
+        suggestionPopup.setFocusable(false);
+        suggestionPopup.add(new JScrollPane(suggestionList));
+
+        suggestionTimer = new Timer(SUGGESTION_DELAY_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                searchSuggestions();
+            }
+        });
+        suggestionTimer.setRepeats(false);
+
         addMovieButton = new JButton("Add movie");
         addMovieButton.addActionListener(new ActionListener() {
             @Override
@@ -110,6 +234,11 @@ public class MovieGui {
         scanButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                if (movieScanner != null) {
+                    movieScanner.cancel();
+                    return;
+                }
+
                 final JFileChooser fileChooser = new JFileChooser();
                 fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
 
@@ -122,7 +251,48 @@ public class MovieGui {
         });
         movieListPanel.add(scanButton, "growx, split");
 
+        watchCheckBox = new JCheckBox("Watch folders");
+        watchCheckBox.setToolTipText("Keep the library in step with the scanned folders");
+        watchCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                movieManager.setWatching(watchCheckBox.isSelected());
+            }
+        });
+        movieListPanel.add(watchCheckBox);
+
+        sortComboBox = new JComboBox<>(SortOrder.values());
+        sortComboBox.setSelectedItem(movieManager.getSortOrder());
+        sortComboBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                movieManager.setSortOrder((SortOrder) sortComboBox.getSelectedItem());
+            }
+        });
+        movieListPanel.add(sortComboBox, "growx");
+
         movieListModel = new MovieListModel(movieManager);
+
+        filterTextField = new JTextField();
+        filterTextField.setToolTipText("Filter by title, cast, genre or keyword");
+        filterTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                movieListModel.setFilter(filterTextField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                movieListModel.setFilter(filterTextField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        movieListPanel.add(filterTextField, "growx");
+
+        movieManager.addLibraryListener(movieListModel);
         movieList = new JList<>(movieListModel);
         movieList.setCellRenderer(new MovieListRenderer());
         movieList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -172,68 +342,206 @@ public class MovieGui {
         createMoviePanel();
 
         frame.pack();
+
+        loadMovies();
     }
 
+    /**
+     * Fill the movie list with the movies stored by previous runs, a page at a
+     * time, without blocking the event dispatch thread.
+     */
+    private void loadMovies() {
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                movieManager.loadMovies(LOAD_PAGE_SIZE,
+                        new MovieManager.MoviePageListener() {
+                    @Override
+                    public void pageLoaded(List<Movie> movies) {
+                        movieManager.addLoadedMovies(movies);
+                    }
+                });
+                return null;
+            }
+        }.execute();
+    }
+
+    /**
+     * Add the suggestion chosen, or failing that the movie best matching the
+     * name entered, in the background, and switch to it once it is added.
+     */
     private void addMovie() {
         String name = movieEnterTextField.getText();
+        MovieDb chosen = suggestionPopup.isVisible() ? suggestionList.getSelectedValue() : null;
+        hideSuggestions();
 
-        if (!name.isEmpty()) {
-            movieListModel.addElement(name, null, true);
+        MovieManager.AddListener listener = new MovieManager.AddListener() {
+            @Override
+            public void movieAdded(final Movie movie) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        changeMovie(movie);
+                    }
+                });
+            }
+        };
+
+        if (chosen != null) {
+            movieManager.addMovieAsync(chosen, null, listener);
+        }
+        else if (!name.isEmpty()) {
+            movieManager.addMovieAsync(name, null, listener);
         }
     }
 
-    private void scanForMovies(File folder) {
+    /**
+     * Show what is already known for the name being typed, and search for
+     * more once typing pauses.
+     */
+    private void movieNameChanged() {
+        String query = movieEnterTextField.getText().trim();
+
+        if (query.length() < MIN_SUGGESTION_LENGTH) {
+            hideSuggestions();
+            return;
+        }
 
-        for (final File file : folder.listFiles()) {
+        List<MovieDb> cached = movieManager.getCachedSuggestions(query);
+        if (cached != null) {
+            showSuggestions(cached);
+        }
+        suggestionTimer.restart();
+    }
 
-            EXECUTOR_SERVICE.submit(new Runnable() {
-                @Override
-                public void run() {
-                    if (file.isFile() && isMovieFile(file)) {
-                        synchronized (this) {
-                            // Remove extensions from name and add to model.
-                            movieListModel.addElement(getMovieName(file.getName()),
-                                    file, false);
+    /**
+     * Search for suggestions for the name typed, in place of any search still
+     * running for what was typed before.
+     */
+    private void searchSuggestions() {
+        cancelSuggestions();
+
+        final String query = movieEnterTextField.getText().trim();
+        if (query.length() < MIN_SUGGESTION_LENGTH) {
+            return;
+        }
+
+        pendingSuggestions = movieManager.suggestMovies(query,
+                new MovieManager.SuggestionListener() {
+            @Override
+            public void suggestionsFound(final String searched,
+                                         final List<MovieDb> suggestions) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Only show them if the user has not typed on since.
+                        if (searched.equals(movieEnterTextField.getText().trim())) {
+                            showSuggestions(suggestions);
                         }
                     }
-                    // Recurse into other directories.
-                    else if (file.isDirectory()) {
-                        scanForMovies(file);
-                    }
-                }
-            });
+                });
+            }
+        });
+    }
+
+    private void cancelSuggestions() {
+        suggestionTimer.stop();
+        if (pendingSuggestions != null) {
+            pendingSuggestions.cancel(true);
+            pendingSuggestions = null;
         }
     }
 
-    private String getMovieName(String fileName) {
-        StringBuilder stringBuilder = new StringBuilder();
-        List<String> parts = Arrays.asList(fileName.split("\\."));
+    /**
+     * Show suggestions under the movie name, keeping the one selected if it
+     * is still there.
+     */
+    private void showSuggestions(List<MovieDb> suggestions) {
+        if (suggestions.isEmpty()) {
+            suggestionPopup.setVisible(false);
+            return;
+        }
 
-        for (String part : parts) {
-            try {
-                Integer.parseInt(part);
-                break;
-            }
-            catch (NumberFormatException e) {
-                stringBuilder.append(part).append(" ");
-            }
+        MovieDb selected = suggestionList.getSelectedValue();
+        suggestionListModel.clear();
+        for (MovieDb suggestion : suggestions) {
+            suggestionListModel.addElement(suggestion);
+        }
+        if (selected != null) {
+            suggestionList.setSelectedValue(selected, true);
         }
 
-        return stringBuilder.toString();
+        // As wide as the movie name, and as tall as the suggestions need.
+        suggestionList.setVisibleRowCount(Math.min(suggestions.size(), MAX_SUGGESTION_ROWS));
+        suggestionPopup.setPreferredSize(null);
+        suggestionPopup.setPopupSize(movieEnterTextField.getWidth(),
+                suggestionPopup.getPreferredSize().height);
+
+        if (suggestionPopup.isVisible()) {
+            suggestionPopup.pack();
+        }
+        else if (movieEnterTextField.isShowing()) {
+            suggestionPopup.show(movieEnterTextField, 0, movieEnterTextField.getHeight());
+        }
     }
 
-    private boolean isMovieFile(File file) {
+    private void hideSuggestions() {
+        cancelSuggestions();
+        suggestionPopup.setVisible(false);
+        suggestionList.clearSelection();
+    }
 
-        final List<String> movieExtensions = Arrays.asList("mp4", "avi", "flv",
-                "webm", "ogg", "mov" ,"3gp", "wmv");
+    private void moveSuggestionSelection(int index) {
+        if (index < 0) {
+            suggestionList.clearSelection();
+        }
+        else if (index < suggestionListModel.getSize()) {
+            suggestionList.setSelectedIndex(index);
+            suggestionList.ensureIndexIsVisible(index);
+        }
+    }
+
+    private void scanForMovies(File folder) {
+
+        scanButton.setText("Cancel scan");
 
-        for (String extension : movieExtensions) {
-            if (file.getName().endsWith(extension)) {
-                return true;
+        movieScanner = movieManager.scanForMovies(folder, new MovieScanner.ScanListener() {
+            @Override
+            public void movieAdded(Movie movie, int index) {
+                // The list model hears of it as a library change.
+            }
+
+            @Override
+            public void progressChanged(int processed, int found) {
+                // Only the latest progress is shown, however often it changes.
+                if (scanProgress.getAndSet(new int[] {processed, found}) != null) {
+                    return;
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        int[] progress = scanProgress.getAndSet(null);
+                        if (movieScanner != null && progress != null) {
+                            scanButton.setText("Cancel scan (" + progress[0] + "/"
+                                    + progress[1] + ")");
+                        }
+                    }
+                });
             }
-        }
 
-        return false;
+            @Override
+            public void scanFinished(boolean cancelled) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        movieScanner = null;
+                        scanButton.setText("Scan for movies");
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -254,6 +562,12 @@ public class MovieGui {
         overviewTextArea = new JTextPane();
         castTextArea = new JTextPane();
 
+        // Backdrops are 16:9 and posters 2:3, both shown at poster height.
+        backdropPlaceholder = createPlaceholder(
+                ImageCache.DISPLAY_HEIGHT * 16 / 9, ImageCache.DISPLAY_HEIGHT);
+        posterPlaceholder = createPlaceholder(
+                ImageCache.DISPLAY_HEIGHT * 2 / 3, ImageCache.DISPLAY_HEIGHT);
+
         JPanel infoPanel = new JPanel();
         infoPanel.setLayout(new MigLayout());
         infoPanel.add(overviewLabel);
@@ -271,6 +585,15 @@ public class MovieGui {
         outputPanel.add(infoPanel, "span");
     }
 
+    private static ImageIcon createPlaceholder(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.LIGHT_GRAY);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return new ImageIcon(image);
+    }
+
     /**
      * Switch the output panel to the selected movie's information.
      * @param movie The movie to switch to.
@@ -281,19 +604,139 @@ public class MovieGui {
             return;
         }
 
-        movieNameLabel.setText(movie.getMovie().getTitle() + " ("
+        long start = System.nanoTime();
+        try {
+            showMovie(movie);
+        }
+        finally {
+            CHANGE_MOVIE_TIMER.stop(start);
+        }
+    }
+
+    private void showMovie(Movie movie) {
+        displayedMovie = movie;
+
+        // Hold on to the information while it is displayed.
+        MovieDb movieDb = movie.getMovie(FetchProfile.DETAIL);
+        if (movieDb == null) {
+            showMovieLoading(movie);
+            return;
+        }
+
+        movieNameLabel.setText(movie.getTitle() + " ("
                 + movieManager.getReleaseYear(movie) + ")");
-        taglineLabel.setText(movie.getMovie().getTagline());
+        taglineLabel.setText(movieDb.getTagline());
 
-        backdropLabel.setIcon(movie.getImage(ImageType.BACKDROP));
-        posterLabel.setIcon(movie.getImage(ImageType.POSTER));
+        showImage(movie, ImageType.BACKDROP, backdropLabel, backdropPlaceholder);
+        showImage(movie, ImageType.POSTER, posterLabel, posterPlaceholder);
 
-        overviewTextArea.setText(movie.getMovie().getOverview());
+        overviewTextArea.setText(movieDb.getOverview());
         castTextArea.setText(movie.getCastList());
 
         outputPanel.setVisible(true);
     }
 
+    /**
+     * Show one of a movie's images, showing a placeholder while it is fetched
+     * in the background if it is not already in memory.
+     */
+    private void showImage(final Movie movie, ImageType imageType, final JLabel label,
+                           ImageIcon placeholder) {
+
+        ImageIcon image = movieManager.getCachedImage(movie, imageType);
+        if (image != null) {
+            label.setIcon(image);
+            return;
+        }
+
+        label.setIcon(placeholder);
+        movieManager.loadImage(movie, imageType, new ImageCache.ImageListener() {
+            @Override
+            public void imageLoaded(final ImageIcon image) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (image != null && displayedMovie == movie) {
+                            label.setIcon(image);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show what is known about a movie loaded from the database while its full
+     * information is fetched in the background.
+     * @param movie The movie to fetch information for.
+     */
+    private void showMovieLoading(final Movie movie) {
+
+        movieNameLabel.setText(movie.getTitle());
+        taglineLabel.setText("Loading...");
+        backdropLabel.setIcon(backdropPlaceholder);
+        posterLabel.setIcon(posterPlaceholder);
+        overviewTextArea.setText("");
+        castTextArea.setText(movie.getCastList());
+        outputPanel.setVisible(true);
+
+        DETAIL_EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (displayedMovie != movie) {
+                    return;
+                }
+
+                if (!movieManager.loadMovieDetails(movie)) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Selecting the movie again later tries again.
+                            if (displayedMovie == movie) {
+                                taglineLabel.setText("Could not load movie information.");
+                            }
+                        }
+                    });
+                    return;
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Only switch if the user has not moved on.
+                        if (displayedMovie != movie) {
+                            return;
+                        }
+
+                        // The movie moves if its title, year or rating has changed.
+                        if (movieListModel.indexOf(movie) != movieList.getSelectedIndex()) {
+                            selectDisplayedMovie(true);
+                        }
+                        changeMovie(movie);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Select the displayed movie in the movie list, wherever it now is.
+     * @param scroll Whether to scroll the list to show it.
+     */
+    private void selectDisplayedMovie(boolean scroll) {
+        if (displayedMovie == null || movieList.getSelectedValue() == displayedMovie) {
+            return;
+        }
+
+        int index = movieListModel.indexOf(displayedMovie);
+        if (index >= 0) {
+            movieList.setSelectedIndex(index);
+            if (scroll) {
+                movieList.ensureIndexIsVisible(index);
+            }
+        }
+    }
+
     private class MovieListRenderer extends DefaultListCellRenderer {
 
         @Override
@@ -305,41 +748,275 @@ public class MovieGui {
 
             if (value instanceof Movie) {
                 Movie movie = (Movie) value;
-                setText(movie.getMovie().getTitle());
+                setText(movie.getTitle());
             }
 
             return this;
         }
     }
 
-    private class MovieListModel extends AbstractListModel<Movie> {
+    private class SuggestionRenderer extends DefaultListCellRenderer {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Component getListCellRendererComponent(
+                JList<?> list, Object value, int index,
+                boolean isSelected, boolean cellHasFocus) {
+
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+
+            if (value instanceof MovieDb) {
+                MovieDb movieDb = (MovieDb) value;
+                int year = Movie.parseYear(movieDb.getReleaseDate());
+                setText(year > 0 ? movieDb.getTitle() + " (" + year + ")" : movieDb.getTitle());
+            }
+
+            return this;
+        }
+    }
+
+    /**
+     * The movie list as the list shows it. The model keeps its own snapshot of
+     * the movie list, replaced only on the event dispatch thread along with
+     * the event describing the change, so the list never sees a size or row
+     * that its events have not told it about.
+     *
+     * Changes are gathered as they are made and shown in batches, at most
+     * {@link #FRAMES_PER_SECOND} times a second, each with a single event. A
+     * scan adding thousands of movies therefore costs a few repaints a second
+     * rather than one per movie.
+     *
+     * While a filter is set only the matching movies are shown, in the same
+     * order. The matches are found again from the search index with each
+     * batch of changes, so movies added meanwhile appear if they match.
+     */
+    private class MovieListModel extends AbstractListModel<Movie>
+            implements MovieManager.LibraryListener {
+
+        private static final int FRAMES_PER_SECOND = 30;
 
         private MovieManager movieManager;
+        private MovieIndex movieIndex;
+
+        /** Guards the pending changes, which are made on other threads. */
+        private final Object pendingLock = new Object();
+        private MovieIndex pendingIndex;
+        private int pendingChanges;
+        private int firstChanged = Integer.MAX_VALUE;
+        private int[] lastAdded;
+        private int lastRemoved;
+        private boolean orderChanged;
+        private boolean flushScheduled;
+
+        private final Timer flushTimer;
+        private long lastFlush;
+
+        /** The words the movie list is filtered by, or an empty string. */
+        private String filter = "";
+        /** The movies shown while filtering, or null to show every movie. */
+        private List<Movie> filtered;
 
         public MovieListModel(MovieManager movieManager) {
             this.movieManager = movieManager;
+            this.movieIndex = movieManager.getMovieIndex();
+
+            flushTimer = new Timer(0, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    flush();
+                }
+            });
+            flushTimer.setRepeats(false);
+        }
+
+        @Override
+        public void moviesAdded(MovieIndex movieIndex, int[] indexes) {
+            synchronized (pendingLock) {
+                lastAdded = indexes;
+                lastRemoved = -1;
+                changed(movieIndex, indexes[0]);
+            }
         }
 
-        public void addElement(String element, File movieFile, boolean switchToMovie) {
+        @Override
+        public void movieRemoved(MovieIndex movieIndex, int index) {
+            synchronized (pendingLock) {
+                lastAdded = null;
+                lastRemoved = index;
+                changed(movieIndex, index);
+            }
+        }
 
-            Movie movie = movieManager.addMovie(element, movieFile);
-            if (switchToMovie) {
-                changeMovie(movie);
+        @Override
+        public void orderChanged(MovieIndex movieIndex) {
+            synchronized (pendingLock) {
+                orderChanged = true;
+                changed(movieIndex, 0);
             }
+        }
+
+        /**
+         * Records a change and makes sure a flush is coming. Called with the
+         * pending lock held.
+         * @param movieIndex The movie list after the change.
+         * @param first The first row the change affects.
+         */
+        private void changed(MovieIndex movieIndex, int first) {
+            pendingIndex = movieIndex;
+            pendingChanges++;
+            firstChanged = Math.min(firstChanged, first);
+
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    long wait = lastFlush + 1000 / FRAMES_PER_SECOND - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        flush();
+                    }
+                    else {
+                        flushTimer.setInitialDelay((int) wait);
+                        flushTimer.restart();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Shows the pending changes with a single event: an exact one if there
+         * was only one change, otherwise one covering every row that may have
+         * changed.
+         */
+        private void flush() {
+            long start = System.nanoTime();
+            try {
+                applyPending();
+            }
+            finally {
+                LIST_FLUSH_TIMER.stop(start);
+            }
+        }
+
+        private void applyPending() {
+            MovieIndex newIndex;
+            int changes;
+            int first;
+            int[] added;
+            int removed;
+            boolean reordered;
+
+            synchronized (pendingLock) {
+                newIndex = pendingIndex;
+                changes = pendingChanges;
+                first = firstChanged;
+                added = lastAdded;
+                removed = lastRemoved;
+                reordered = orderChanged;
+
+                pendingIndex = null;
+                pendingChanges = 0;
+                firstChanged = Integer.MAX_VALUE;
+                orderChanged = false;
+                flushScheduled = false;
+            }
+
+            if (newIndex == null) {
+                return;
+            }
+
+            int oldSize = getSize();
+            movieIndex = newIndex;
+            lastFlush = System.currentTimeMillis();
+
+            if (filtered != null) {
+                refilter(oldSize);
+                selectDisplayedMovie(reordered);
+                return;
+            }
+
+            if (changes == 1 && !reordered && added != null
+                    && added[added.length - 1] - added[0] == added.length - 1) {
+                fireIntervalAdded(this, added[0], added[added.length - 1]);
+            }
+            else if (changes == 1 && !reordered && added == null) {
+                fireIntervalRemoved(this, removed, removed);
+            }
+            else {
+                int last = Math.max(oldSize, getSize()) - 1;
+                if (last >= 0) {
+                    fireContentsChanged(this, Math.min(first, last), last);
+                }
+
+                // Rows have moved under the selection.
+                selectDisplayedMovie(reordered);
+            }
+        }
+
+        /**
+         * Shows only the movies matching a query, see
+         * {@link MovieManager#findMovies(String)}.
+         * @param query The words to look for, or an empty string to show
+         * every movie.
+         */
+        public void setFilter(String query) {
+            if (query.trim().equals(filter)) {
+                return;
+            }
+
+            filter = query.trim();
+            refilter(getSize());
+            selectDisplayedMovie(true);
+        }
+
+        /**
+         * Finds the movies matching the filter and shows them.
+         * @param oldSize The number of rows shown before.
+         */
+        private void refilter(int oldSize) {
+            Set<Movie> matches = movieManager.findMovies(filter);
+
+            if (matches == null) {
+                filtered = null;
+            }
+            else {
+                List<Movie> movies = movieIndex.asList();
+                filtered = new ArrayList<>(matches.size());
+                for (int i = 0; i < movies.size() && filtered.size() < matches.size(); i++) {
+                    Movie movie = movies.get(i);
+                    if (matches.contains(movie)) {
+                        filtered.add(movie);
+                    }
+                }
+            }
+
+            int last = Math.max(oldSize, getSize()) - 1;
+            if (last >= 0) {
+                fireContentsChanged(this, 0, last);
+            }
+        }
 
-            int listSize = getSize();
-            int interval = listSize == 0 ? listSize : listSize - 1;
-            fireIntervalAdded(this, interval, interval);
+        /**
+         * Returns the row a movie is shown in.
+         * @param movie The movie to find.
+         * @return The row, or -1 if the movie is not shown.
+         */
+        public int indexOf(Movie movie) {
+            return filtered != null ? filtered.indexOf(movie) : movieIndex.indexOf(movie);
         }
 
         @Override
         public int getSize() {
-            return movieManager.getMovieList().size();
+            return filtered != null ? filtered.size() : movieIndex.size();
         }
 
         @Override
         public Movie getElementAt(int index) {
-            return movieManager.getMovieList().get(index);
+            return filtered != null ? filtered.get(index) : movieIndex.get(index);
         }
     }
 
@@ -352,7 +1029,8 @@ public class MovieGui {
 
                 final Movie movie = ((JList<Movie>) e.getSource()).getSelectedValue();
 
-                if (movie != null) {
+                // Reselecting the displayed movie after the list changes needs no redisplay.
+                if (movie != null && movie != displayedMovie) {
                     SwingUtilities.invokeLater(new Runnable() {
                         @Override
                         public void run() {
@@ -0,0 +1,385 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the movies of the library, sorted in every
+ * {@link SortOrder} at once so that switching order needs no sorting.
+ * Changes return a new index and leave the old one untouched, so readers can
+ * use an index from any thread without locking while writers build the next.
+ *
+ * Each order is stored as a list of chunks of a few hundred movies. A change
+ * copies only the chunk it touches and the small array of chunk references,
+ * and shares everything else with the previous index, so a new snapshot costs
+ * little more than an insert into a plain list. Movies are found by binary
+ * search.
+ *
+ * The fields that movies are sorted on must not change while they are in the
+ * index being changed; remove a movie before changing them and add it again
+ * afterwards.
+ */
+public final class MovieIndex {
+
+    private static final MovieIndex EMPTY = new MovieIndex();
+
+    private final Map<SortOrder, Chunks> orders;
+    private final SortOrder order;
+    private final List<Movie> view = new AbstractList<Movie>() {
+        @Override
+        public Movie get(int index) {
+            return MovieIndex.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return MovieIndex.this.size();
+        }
+    };
+
+    private MovieIndex() {
+        orders = new EnumMap<>(SortOrder.class);
+        for (SortOrder sortOrder : SortOrder.values()) {
+            orders.put(sortOrder, Chunks.EMPTY);
+        }
+        order = SortOrder.TITLE;
+    }
+
+    private MovieIndex(Map<SortOrder, Chunks> orders, SortOrder order) {
+        this.orders = orders;
+        this.order = order;
+    }
+
+    /**
+     * Returns an index with no movies, in title order.
+     * @return The empty index.
+     */
+    public static MovieIndex empty() {
+        return EMPTY;
+    }
+
+    public SortOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns this index with positions referring to another order.
+     * @param sortOrder The new order.
+     * @return The index in the new order.
+     */
+    public MovieIndex withOrder(SortOrder sortOrder) {
+        return sortOrder == order ? this : new MovieIndex(orders, sortOrder);
+    }
+
+    public int size() {
+        return orders.get(order).size();
+    }
+
+    /**
+     * Returns the movie at a position in the current order.
+     * @param index The position of the movie.
+     * @return The movie.
+     */
+    public Movie get(int index) {
+        return orders.get(order).get(index);
+    }
+
+    /**
+     * Returns the movies in the current order.
+     * @return An unmodifiable list of the movies.
+     */
+    public List<Movie> asList() {
+        return view;
+    }
+
+    /**
+     * Returns the position of a movie in the current order.
+     * @param movie The movie to find.
+     * @return The position, or -1 if the movie is not in the index.
+     */
+    public int indexOf(Movie movie) {
+        Chunks chunks = orders.get(order);
+        int index = chunks.find(movie, order);
+
+        // The movie may have been re-sorted since this index was made.
+        return index >= 0 ? index : chunks.scan(movie);
+    }
+
+    /**
+     * Returns this index with a movie added.
+     * @param movie The movie to add.
+     * @return The new index.
+     */
+    public MovieIndex withMovie(Movie movie) {
+        Map<SortOrder, Chunks> changed = new EnumMap<>(SortOrder.class);
+        for (Map.Entry<SortOrder, Chunks> entry : orders.entrySet()) {
+            changed.put(entry.getKey(), entry.getValue().insert(movie, entry.getKey()));
+        }
+        return new MovieIndex(changed, order);
+    }
+
+    /**
+     * Returns this index with many movies added. The movies are sorted and
+     * merged into each order in one pass.
+     * @param movies The movies to add.
+     * @return The new index.
+     */
+    public MovieIndex withMovies(Collection<Movie> movies) {
+        if (movies.isEmpty()) {
+            return this;
+        }
+
+        Map<SortOrder, Chunks> changed = new EnumMap<>(SortOrder.class);
+        for (Map.Entry<SortOrder, Chunks> entry : orders.entrySet()) {
+            changed.put(entry.getKey(), entry.getValue().merge(movies, entry.getKey()));
+        }
+        return new MovieIndex(changed, order);
+    }
+
+    /**
+     * Returns this index without a movie.
+     * @param movie The movie to remove.
+     * @return The new index, or this index if the movie was not in it.
+     */
+    public MovieIndex withoutMovie(Movie movie) {
+        if (indexOf(movie) < 0) {
+            return this;
+        }
+
+        Map<SortOrder, Chunks> changed = new EnumMap<>(SortOrder.class);
+        for (Map.Entry<SortOrder, Chunks> entry : orders.entrySet()) {
+            changed.put(entry.getKey(), entry.getValue().remove(movie, entry.getKey()));
+        }
+        return new MovieIndex(changed, order);
+    }
+
+    /**
+     * The movies of one order, split into chunks. Never changed once made.
+     */
+    private static final class Chunks {
+
+        private static final int CHUNK_SIZE = 512;
+        private static final Chunks EMPTY = new Chunks(new Movie[0][]);
+
+        private final Movie[][] chunks;
+        /** The number of movies up to and including each chunk. */
+        private final int[] ends;
+
+        private Chunks(Movie[][] chunks) {
+            this.chunks = chunks;
+            ends = new int[chunks.length];
+
+            int total = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                total += chunks[i].length;
+                ends[i] = total;
+            }
+        }
+
+        private int size() {
+            return ends.length == 0 ? 0 : ends[ends.length - 1];
+        }
+
+        private Movie get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+
+            int chunk = chunkContaining(index);
+            return chunks[chunk][index - start(chunk)];
+        }
+
+        /**
+         * Returns the position to insert a movie at: after any movies that
+         * compare equal to it, so that equal movies keep the order they were
+         * added in.
+         */
+        private int insertionPoint(Movie movie, SortOrder sortOrder) {
+            // The first chunk whose last movie sorts after the new one.
+            int low = 0;
+            int high = chunks.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                Movie[] chunk = chunks[middle];
+                if (sortOrder.getComparator().compare(chunk[chunk.length - 1], movie) <= 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+
+            if (low == chunks.length) {
+                return size();
+            }
+            return start(low) + upperBound(chunks[low], movie, sortOrder);
+        }
+
+        private int find(Movie movie, SortOrder sortOrder) {
+            // Movies comparing equal sit just before the insertion point.
+            for (int i = insertionPoint(movie, sortOrder) - 1; i >= 0; i--) {
+                Movie candidate = get(i);
+                if (candidate == movie) {
+                    return i;
+                }
+                if (sortOrder.getComparator().compare(candidate, movie) != 0) {
+                    break;
+                }
+            }
+
+            return -1;
+        }
+
+        private int scan(Movie movie) {
+            int index = 0;
+            for (Movie[] chunk : chunks) {
+                for (Movie candidate : chunk) {
+                    if (candidate == movie) {
+                        return index;
+                    }
+                    index++;
+                }
+            }
+            return -1;
+        }
+
+        private Chunks insert(Movie movie, SortOrder sortOrder) {
+            if (chunks.length == 0) {
+                return new Chunks(new Movie[][] {{movie}});
+            }
+
+            int index = insertionPoint(movie, sortOrder);
+            int chunk = index == size() ? chunks.length - 1 : chunkContaining(index);
+            int offset = index - start(chunk);
+
+            Movie[] old = chunks[chunk];
+            Movie[] grown = new Movie[old.length + 1];
+            System.arraycopy(old, 0, grown, 0, offset);
+            grown[offset] = movie;
+            System.arraycopy(old, offset, grown, offset + 1, old.length - offset);
+
+            if (grown.length <= CHUNK_SIZE * 2) {
+                Movie[][] changed = chunks.clone();
+                changed[chunk] = grown;
+                return new Chunks(changed);
+            }
+
+            // Split a full chunk in two.
+            Movie[][] changed = new Movie[chunks.length + 1][];
+            System.arraycopy(chunks, 0, changed, 0, chunk);
+            changed[chunk] = Arrays.copyOfRange(grown, 0, CHUNK_SIZE);
+            changed[chunk + 1] = Arrays.copyOfRange(grown, CHUNK_SIZE, grown.length);
+            System.arraycopy(chunks, chunk + 1, changed, chunk + 2, chunks.length - chunk - 1);
+            return new Chunks(changed);
+        }
+
+        private Chunks remove(Movie movie, SortOrder sortOrder) {
+            int index = find(movie, sortOrder);
+            if (index < 0) {
+                index = scan(movie);
+                if (index < 0) {
+                    return this;
+                }
+            }
+
+            int chunk = chunkContaining(index);
+            int offset = index - start(chunk);
+            Movie[] old = chunks[chunk];
+
+            if (old.length == 1) {
+                Movie[][] changed = new Movie[chunks.length - 1][];
+                System.arraycopy(chunks, 0, changed, 0, chunk);
+                System.arraycopy(chunks, chunk + 1, changed, chunk, chunks.length - chunk - 1);
+                return new Chunks(changed);
+            }
+
+            Movie[] shrunk = new Movie[old.length - 1];
+            System.arraycopy(old, 0, shrunk, 0, offset);
+            System.arraycopy(old, offset + 1, shrunk, offset, old.length - offset - 1);
+
+            Movie[][] changed = chunks.clone();
+            changed[chunk] = shrunk;
+            return new Chunks(changed);
+        }
+
+        private Chunks merge(Collection<Movie> movies, SortOrder sortOrder) {
+            List<Movie> sorted = new ArrayList<>(movies);
+            Collections.sort(sorted, sortOrder.getComparator());
+
+            Movie[] merged = new Movie[size() + sorted.size()];
+            int copied = 0;
+            int length = 0;
+            for (Movie movie : sorted) {
+                int position = insertionPoint(movie, sortOrder);
+                length = copyTo(merged, length, copied, position);
+                copied = position;
+                merged[length++] = movie;
+            }
+            copyTo(merged, length, copied, size());
+
+            Movie[][] changed = new Movie[(merged.length + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+            for (int i = 0; i < changed.length; i++) {
+                int from = i * CHUNK_SIZE;
+                changed[i] = Arrays.copyOfRange(merged, from,
+                        Math.min(merged.length, from + CHUNK_SIZE));
+            }
+            return new Chunks(changed);
+        }
+
+        /**
+         * Copies a range of this list's movies into an array.
+         * @return The position in the array after the last movie copied.
+         */
+        private int copyTo(Movie[] target, int targetIndex, int from, int to) {
+            while (from < to) {
+                int chunk = chunkContaining(from);
+                int offset = from - start(chunk);
+                int count = Math.min(to - from, chunks[chunk].length - offset);
+
+                System.arraycopy(chunks[chunk], offset, target, targetIndex, count);
+                targetIndex += count;
+                from += count;
+            }
+            return targetIndex;
+        }
+
+        private int start(int chunk) {
+            return chunk == 0 ? 0 : ends[chunk - 1];
+        }
+
+        private int chunkContaining(int index) {
+            int low = 0;
+            int high = ends.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ends[middle] <= index) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private static int upperBound(Movie[] chunk, Movie movie, SortOrder sortOrder) {
+            int low = 0;
+            int high = chunk.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sortOrder.getComparator().compare(chunk[middle], movie) <= 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+}
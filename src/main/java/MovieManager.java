@@ -1,16 +1,27 @@
 import com.omertron.themoviedbapi.MovieDbException;
-import com.omertron.themoviedbapi.TheMovieDbApi;
 import com.omertron.themoviedbapi.model.MovieDb;
 
-import javax.swing.*;
+import javax.swing.ImageIcon;
 import java.io.*;
-import java.net.URL;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,8 +32,40 @@ import java.util.logging.Logger;
 public class MovieManager {
 
     public static final Logger LOGGER = Logger.getLogger(MovieManager.class.getName());
+    /** The library's timers, counters and gauges, see {@link Metrics}. */
+    public static final Metrics METRICS = new Metrics();
     private static final String API_KEY = getApiKey();
     private static final String DB_NAME = "movies.db";
+    private static final String CACHE_DIRECTORY = "cache";
+    private static final String IMAGE_CACHE_DIRECTORY = "cache/images";
+    private static final int MAX_CONNECTIONS = 16;
+    private static final int ADD_THREADS = 4;
+    private static final int SUGGESTION_THREADS = 2;
+
+    /** A directory to record TheMovieDb responses to, see {@link RecordingMetadataProvider}. */
+    public static final String RECORD_PROPERTY = "moviemanager.record";
+    /** A directory to play recorded responses back from instead of using TheMovieDb. */
+    public static final String REPLAY_PROPERTY = "moviemanager.replay";
+    /** The average time a played back request takes, in milliseconds. */
+    public static final String REPLAY_LATENCY_PROPERTY = "moviemanager.replay.latency";
+    /** The share of played back requests that are rate limited, from 0 to 1. */
+    public static final String REPLAY_THROTTLED_PROPERTY = "moviemanager.replay.throttled";
+    /** How often to log a snapshot of the metrics, in seconds. Not logged if unset. */
+    public static final String METRICS_INTERVAL_PROPERTY = "moviemanager.metrics.interval";
+    /** The JMX object name the metrics are published under. */
+    public static final String METRICS_NAME = "MovieManager:type=Metrics";
+
+    private static final Metrics.Timer FIND_TIMER = METRICS.timer("lookup.find");
+    /** Movie information fetched from TheMovieDb; cache hits are only counted. */
+    private static final Metrics.Timer MOVIE_FETCH_TIMER = METRICS.timer("lookup.movieInfo.fetch");
+    private static final Metrics.Timer DOWNLOAD_TIMER = METRICS.timer("image.download");
+    private static final Metrics.Timer SAVE_TIMER = METRICS.timer("db.enqueue");
+    private static final Metrics.Counter NOT_FOUND = METRICS.counter("lookup.notFound");
+    private static final Metrics.Counter LOOKUP_FAILED = METRICS.counter("lookup.failed");
+    private static final Metrics.Counter SEARCH_CACHE_HITS = METRICS.counter("cache.search.hit");
+    private static final Metrics.Counter SEARCH_CACHE_MISSES = METRICS.counter("cache.search.miss");
+    private static final Metrics.Counter MOVIE_CACHE_HITS = METRICS.counter("cache.movie.hit");
+    private static final Metrics.Counter MOVIE_CACHE_MISSES = METRICS.counter("cache.movie.miss");
 
     /**
      * Retrieves the MovieDb API key stored in the file "api.key". If this file
@@ -44,21 +87,207 @@ public class MovieManager {
         return null;
     }
 
-    private TheMovieDbApi movieDatabase;
-    private List<Movie> movieList;
+    /**
+     * Creates the provider of movie information chosen by the system
+     * properties: TheMovieDb, optionally recording its responses, or a
+     * recording played back.
+     * @return The metadata provider.
+     * @throws MovieDbException If TheMovieDb is chosen and could not be set up.
+     */
+    public static MetadataProvider createMetadataProvider() throws MovieDbException {
+        String replay = System.getProperty(REPLAY_PROPERTY);
+        if (replay != null) {
+            LOGGER.log(Level.INFO, "Playing back responses from " + replay);
+            return new ReplayMetadataProvider(new File(replay),
+                    Long.getLong(REPLAY_LATENCY_PROPERTY, 0),
+                    Double.parseDouble(System.getProperty(REPLAY_THROTTLED_PROPERTY, "0")));
+        }
 
-    public MovieManager() {
-        try {
-            movieDatabase = new TheMovieDbApi(API_KEY);
-            movieList = new ArrayList<>();
-            initDatabase();
+        MetadataProvider provider = new TmdbMetadataProvider(API_KEY, MAX_CONNECTIONS);
+
+        String record = System.getProperty(RECORD_PROPERTY);
+        if (record != null) {
+            LOGGER.log(Level.INFO, "Recording responses to " + record);
+            provider = new RecordingMetadataProvider(provider, new File(record));
         }
-        catch (MovieDbException e) {
-            LOGGER.log(Level.SEVERE, "Could not initialise api.");
-            JOptionPane.showMessageDialog(new JFrame(),
-                    "Please add an API key for TheMovieDb in api.key",
-                    "No API key found", JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
+        return provider;
+    }
+
+    /**
+     * Receives pages of movies as they are read from the database.
+     */
+    public interface MoviePageListener {
+        void pageLoaded(List<Movie> movies);
+    }
+
+    /**
+     * Receives changes to the current movie list. Each change comes with the
+     * list as it is afterwards. Methods are called from the thread making the
+     * change, in the order the changes are made, and must return quickly.
+     */
+    public interface LibraryListener {
+
+        /**
+         * @param movieIndex The movie list after the change.
+         * @param indexes The indexes the movies were added at, ascending.
+         */
+        void moviesAdded(MovieIndex movieIndex, int[] indexes);
+
+        /**
+         * @param movieIndex The movie list after the change.
+         * @param index The index the movie was removed from.
+         */
+        void movieRemoved(MovieIndex movieIndex, int index);
+
+        /**
+         * @param movieIndex The movie list in its new order.
+         */
+        void orderChanged(MovieIndex movieIndex);
+    }
+
+    /**
+     * Receives a movie added in the background. Called from a background
+     * thread.
+     */
+    public interface AddListener {
+
+        /**
+         * @param movie The movie added or already present, or null if it could
+         * not be found.
+         */
+        void movieAdded(Movie movie);
+    }
+
+    /**
+     * Receives the movies suggested for a partly typed title. Called from a
+     * background thread.
+     */
+    public interface SuggestionListener {
+
+        /**
+         * @param query The query the suggestions are for.
+         * @param suggestions The movies found, best match first.
+         */
+        void suggestionsFound(String query, List<MovieDb> suggestions);
+    }
+
+    private MetadataProvider metadataProvider;
+    private MovieDbCache movieDbCache;
+    private ImageCache imageCache;
+    private RequestLimiter requestLimiter = new RequestLimiter();
+    private LibraryDatabase libraryDatabase;
+    private LibraryWriter libraryWriter;
+
+    /**
+     * The current movie list. Replaced, never changed, while holding the lock
+     * on this manager, so it can be read at any time without locking.
+     */
+    private volatile MovieIndex movieIndex = MovieIndex.empty();
+    /** The words of every movie in the movie list, for filtering it. */
+    private final MovieSearchIndex searchIndex = new MovieSearchIndex();
+    private List<LibraryListener> libraryListeners = new CopyOnWriteArrayList<>();
+
+    /** Every movie in the library, or being added to it, by TheMovieDb id. */
+    private ConcurrentMap<Integer, Movie> moviesById = new ConcurrentHashMap<>();
+    private SingleFlight<String, MovieDb> titleLookups = new SingleFlight<>();
+    private SingleFlight<String, MovieDb> movieInfoLookups = new SingleFlight<>();
+    private SuggestionCache suggestionCache =
+            new SuggestionCache(SuggestionCache.DEFAULT_MAX_QUERIES);
+
+    private final ThreadPoolExecutor addExecutor = newExecutor(ADD_THREADS, "MovieManager add");
+    private final ThreadPoolExecutor suggestionExecutor =
+            newExecutor(SUGGESTION_THREADS, "MovieManager suggest");
+
+    /** The information fetched for each movie found by a scan or added. */
+    private volatile FetchProfile scanProfile = FetchProfile.DETAIL;
+    private volatile List<String> scanExcludes = Collections.emptyList();
+
+    /** The file index, keyed by path. Read from the database on first use. */
+    private volatile ConcurrentMap<String, FileRecord> fileIndex;
+    /** A file for each fingerprint in the file index. */
+    private ConcurrentMap<String, FileRecord> filesByFingerprint;
+    private final Object fileIndexLock = new Object();
+    private volatile LibraryWatcher libraryWatcher;
+    private boolean closed;
+
+    /**
+     * Creates a movie manager that gets movie information from the provider
+     * chosen by the system properties, see {@link #createMetadataProvider()}.
+     * @throws MovieDbException If TheMovieDb could not be set up, usually
+     * because there is no API key in api.key.
+     */
+    public MovieManager() throws MovieDbException {
+        this(createMetadataProvider());
+    }
+
+    /**
+     * Creates a movie manager that gets movie information and images from
+     * the given provider.
+     * @param metadataProvider The provider of movie information.
+     */
+    public MovieManager(MetadataProvider metadataProvider) {
+        this.metadataProvider = metadataProvider;
+        movieDbCache = new MovieDbCache(new File(CACHE_DIRECTORY),
+                MovieDbCache.DEFAULT_MAX_BYTES);
+        imageCache = new ImageCache(this, new File(IMAGE_CACHE_DIRECTORY),
+                ImageCache.DEFAULT_DISK_BYTES, ImageCache.DEFAULT_MEMORY_BYTES);
+        initDatabase();
+        initMetrics();
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, final String name) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Publish the metrics over JMX, with gauges for the background work
+     * waiting, and log them regularly if asked to by the system properties.
+     */
+    private void initMetrics() {
+        METRICS.gauge("add.queue", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return addExecutor.getQueue().size();
+            }
+        });
+        METRICS.gauge("suggest.queue", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return suggestionExecutor.getQueue().size();
+            }
+        });
+        METRICS.gauge("tmdb.inFlight", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return requestLimiter.getInFlight();
+            }
+        });
+        METRICS.gauge("tmdb.waiting", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return requestLimiter.getWaiting();
+            }
+        });
+        METRICS.gauge("tmdb.limit", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return requestLimiter.getLimit();
+            }
+        });
+
+        METRICS.register(METRICS_NAME);
+
+        long interval = Long.getLong(METRICS_INTERVAL_PROPERTY, 0);
+        if (interval > 0) {
+            METRICS.startSnapshots(interval);
         }
     }
 
@@ -66,64 +295,87 @@ public class MovieManager {
      * Initialise internal database for storing found movies.
      */
     private void initDatabase() {
-        File dbfile = new File(DB_NAME);
-        boolean newDb = !dbfile.exists();
-
         try {
-            Class.forName("org.sqlite.JDBC");
-            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_NAME);
-
-            if (newDb) createTables(connection);
-
-            connection.close();
+            libraryDatabase = new LibraryDatabase(DB_NAME);
         }
-        catch (ClassNotFoundException | SQLException e) {
+        catch (SQLException e) {
             e.printStackTrace();
             LOGGER.log(Level.SEVERE, e.getMessage());
+            return;
         }
 
+        libraryWriter = new LibraryWriter(libraryDatabase);
+
+        // Make sure queued changes reach the disk before exiting.
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }));
+
         LOGGER.log(Level.INFO, "Database initialised.");
     }
 
     /**
-     * Setup new tables for a new database.
+     * Stops watching the library folders and writes all queued changes to
+     * the database, then closes it. Changes made after this are not saved.
      */
-    private void createTables(Connection connection) throws SQLException {
-        PreparedStatement createStatement = connection.prepareStatement(
-                "CREATE TABLE MOVIES (" +
-                "ID        INT   NOT NULL  PRIMARY KEY, " +
-                "NAME      TEXT  NOT NULL,              " +
-                "FILEPATH  TEXT,                        " +
-                "CAST      TEXT  NOT NULL              )"
-        );
-        createStatement.executeUpdate();
-        createStatement.close();
-        connection.commit();
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        setWatching(false);
+        if (libraryWriter != null) {
+            libraryWriter.close();
+            libraryDatabase.close();
+        }
     }
 
     /**
-     * Adds movie information to the database.
+     * Queues movie information to be added to the database.
      * @param movie The movie to add.
      */
     private void addDatabaseMovie(Movie movie) {
-        try {
-            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_NAME);
+        if (libraryWriter != null) {
+            // Waits if the writer has fallen behind.
+            long start = System.nanoTime();
+            libraryWriter.addMovie(movie);
+            SAVE_TIMER.stop(start);
+        }
+    }
 
-            PreparedStatement addStatement = connection.prepareStatement(
-                    "INSERT INTO MOVIES " +
-                    "(ID, NAME, FILEPATH, CAST) " +
-                    "VALUES (?, ?, ?, ?)"
-            );
-            File movieFile = movie.getMovieFile();
-            addStatement.setInt(1, movie.hashCode());
-            addStatement.setString(2, movie.toString());
-            addStatement.setString(3, movieFile != null ? movieFile.getPath() : "NULL");
-            addStatement.setString(4, movie.getCastList());
+    /**
+     * Queues a movie to be removed from the database.
+     * @param movie The movie to remove.
+     */
+    private void removeDatabaseMovie(Movie movie) {
+        if (libraryWriter != null) {
+            libraryWriter.removeMovie(movie);
+        }
+    }
 
-            addStatement.executeUpdate();
-            addStatement.close();
+    /**
+     * Reads all stored movies from the database, sorted by name, and passes
+     * them to the listener a page at a time. Only the stored information is
+     * read; the full movie information is fetched by
+     * {@link #loadMovieDetails(Movie)} when it is needed.
+     * The movies are not added to the movie list, see
+     * {@link #addLoadedMovies(List)}.
+     * @param pageSize The maximum number of movies in each page.
+     * @param listener The listener to receive each page.
+     */
+    public void loadMovies(int pageSize, MoviePageListener listener) {
+        if (libraryDatabase == null) {
+            return;
+        }
 
-            connection.close();
+        try {
+            libraryDatabase.loadMovies(this, pageSize, listener);
         }
         catch (SQLException e) {
             e.printStackTrace();
@@ -132,47 +384,684 @@ public class MovieManager {
     }
 
     /**
-     * Removes a movie from the database.
-     * @param movie The movie to remove.
+     * Adds movies read by {@link #loadMovies(int, MoviePageListener)} to the
+     * current movie list. A movie that has already been added, by a scan that
+     * started before loading finished, just gains the stored files.
+     * @param movies The movies to add.
+     * @return The number of movies added.
      */
-    private void removeDatabaseMovie(Movie movie) {
-        try {
-            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + DB_NAME);
+    public synchronized int addLoadedMovies(List<Movie> movies) {
+        List<Movie> added = new ArrayList<>(movies.size());
 
-            PreparedStatement addStatement = connection.prepareStatement(
-                    "DELETE FROM MOVIES " +
-                    "WHERE NAME = ?"
-            );
-            addStatement.setString(1, movie.toString());
+        for (Movie movie : movies) {
+            if (movie.getMovieId() > 0) {
+                Movie existing = moviesById.putIfAbsent(movie.getMovieId(), movie);
+                if (existing != null) {
+                    for (File movieFile : movie.getMovieFiles()) {
+                        existing.addMovieFile(movieFile);
+                    }
+                    continue;
+                }
+            }
 
-            addStatement.executeUpdate();
-            addStatement.close();
+            added.add(movie);
+        }
 
-            connection.close();
+        if (added.isEmpty()) {
+            return 0;
         }
-        catch (SQLException e) {
-            e.printStackTrace();
-            LOGGER.log(Level.SEVERE, e.getMessage());
+
+        movieIndex = movieIndex.withMovies(added);
+        for (Movie movie : added) {
+            searchIndex.add(movie);
         }
+
+        int[] indexes = new int[added.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = movieIndex.indexOf(added.get(i));
+        }
+        Arrays.sort(indexes);
+
+        for (LibraryListener listener : libraryListeners) {
+            listener.moviesAdded(movieIndex, indexes);
+        }
+        return added.size();
     }
 
     /**
-     * Add a movie to the current movie list, if found.
-     * @param movieName The name of the movie to add.
+     * Sets how much information is fetched for each new movie found by a scan
+     * or added. The default, {@link FetchProfile#DETAIL}, includes the cast,
+     * genres and keywords that the movie list is filtered by and the library
+     * is queried by, at the cost of a request per new movie.
+     * {@link FetchProfile#LIST} comes with the search results and needs no
+     * more requests, but then a movie only matches filters and queries by
+     * cast, genre or keyword once it has been displayed.
+     * @param scanProfile The information to fetch.
+     */
+    public void setScanProfile(FetchProfile scanProfile) {
+        this.scanProfile = scanProfile;
+    }
+
+    /**
+     * Sets the paths that scans skip, such as extras or sample folders.
+     * @param excludePatterns Glob patterns, matched against the whole path.
+     */
+    public void setScanExcludes(List<String> excludePatterns) {
+        this.scanExcludes = new ArrayList<>(excludePatterns);
+    }
+
+    /**
+     * Fetches the information shown on a movie's page, if it is not already
+     * held. This is needed for movies loaded from the database or found by a
+     * scan, and for movies whose information has been dropped to free memory,
+     * which usually comes back from the on-disk cache without using the
+     * network.
+     * @param movie The movie to fill in.
+     * @return True if the movie information is available.
+     */
+    public boolean loadMovieDetails(Movie movie) {
+        return loadMovieInfo(movie, FetchProfile.DETAIL);
+    }
+
+    /**
+     * Fetches information for a movie, if enough of it is not already held.
+     * @param movie The movie to fill in.
+     * @param profile The information needed.
+     * @return True if the movie information is available.
+     */
+    public boolean loadMovieInfo(Movie movie, FetchProfile profile) {
+        if (movie.isLoaded(profile)) {
+            return true;
+        }
+
+        boolean storedById = movie.getMovieId() > 0;
+        int movieId = movie.getMovieId();
+
+        if (!storedById) {
+            MovieDb found = findMovieOnce(ReleaseName.typed(movie.getTitle()));
+            if (found == null) {
+                return false;
+            }
+            movieId = found.getId();
+        }
+
+        MovieDb movieDb = getMovieInfo(movieId, profile);
+        if (movieDb == null) {
+            return false;
+        }
+
+        String castList = movie.getCastList();
+        String genreList = movie.getGenreList();
+        String keywordList = movie.getKeywordList();
+
+        if (!storedById) {
+            // Replace the row stored by name with one keyed by id.
+            removeDatabaseMovie(movie);
+            Movie existing = moviesById.putIfAbsent(movieId, movie);
+            if (existing != null && existing != movie) {
+                mergeMovie(movie, existing);
+                movie.setMovie(movieDb, profile);
+                return true;
+            }
+            setMovieInfo(movie, movieDb, profile);
+            addDatabaseMovie(movie);
+        }
+        else {
+            setMovieInfo(movie, movieDb, profile);
+
+            // Movies found by a scan are stored before their cast is known.
+            if (!castList.equals(movie.getCastList())
+                    || !genreList.equals(movie.getGenreList())
+                    || !keywordList.equals(movie.getKeywordList())) {
+                addDatabaseMovie(movie);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the files of a movie stored by name to the same movie already
+     * loaded by id, and drops the movie stored by name from the movie list.
+     */
+    private void mergeMovie(Movie movie, Movie existing) {
+        removeSorted(movie);
+
+        boolean added = false;
+        for (File movieFile : movie.getMovieFiles()) {
+            added |= existing.addMovieFile(movieFile);
+        }
+        if (added) {
+            addDatabaseMovie(existing);
+        }
+    }
+
+    /**
+     * Fills in a movie's information, moving the movie in the movie list if
+     * its title, year or rating has changed.
+     */
+    private synchronized void setMovieInfo(Movie movie, MovieDb movieDb, FetchProfile profile) {
+        // The movie index finds movies by what they are sorted by, so a
+        // movie whose order changes is taken out while it changes.
+        boolean moves = !movie.getTitle().equals(movieDb.getTitle())
+                || movie.getReleaseYear() != Movie.parseYear(movieDb.getReleaseDate())
+                || movie.getRating() != movieDb.getVoteAverage();
+        boolean listed = moves && removeSorted(movie) >= 0;
+
+        movie.setMovie(movieDb, profile);
+
+        if (listed) {
+            addSorted(movie);
+        }
+        else {
+            searchIndex.update(movie);
+        }
+    }
+
+    /**
+     * Fetches one of a movie's images in the background. Images are cached on
+     * disk and, up to a limit, in memory.
+     * @param movie The movie to fetch the image for.
+     * @param imageType The type of image.
+     * @param listener The listener to give the image to, from a background thread.
+     */
+    public void loadImage(Movie movie, ImageType imageType, ImageCache.ImageListener listener) {
+        imageCache.loadImage(movie.getImagePath(imageType), imageType, listener);
+    }
+
+    /**
+     * Returns one of a movie's images if it is already in memory.
+     * @param movie The movie to get the image for.
+     * @param imageType The type of image.
+     * @return The image, or null if it has to be fetched with
+     * {@link #loadImage(Movie, ImageType, ImageCache.ImageListener)}.
+     */
+    public ImageIcon getCachedImage(Movie movie, ImageType imageType) {
+        String path = movie.getImagePath(imageType);
+        return path != null ? imageCache.getCachedImage(path, imageType) : null;
+    }
+
+    /**
+     * Add a movie to the current movie list, if found. If the movie is already
+     * in the list, the file is added to it instead.
+     * @param movieName The title of the movie to add, searched as typed.
      * @param movieFile The filepath of the given movie
-     * @return The movie added, or null if the movie could not be found.
+     * @return The movie added or already present, or null if the movie could
+     * not be found.
      */
     public Movie addMovie(String movieName, File movieFile) {
 
-        MovieDb movieDb = findMovie(movieName);
-        if (movieDb != null) {
-            Movie movie = new Movie(this, movieDb, movieFile);
-            addSorted(movie);
+        MovieDb movieDb = findMovieOnce(ReleaseName.typed(movieName));
+        if (movieDb == null) {
+            return null;
+        }
+
+        return addMovie(movieDb, movieFile);
+    }
+
+    /**
+     * Add a movie chosen from search results, such as those given by
+     * {@link #suggestMovies(String, SuggestionListener)}, to the current
+     * movie list. If the movie is already in the list, the file is added to
+     * it instead.
+     * @param movieDb The search result to add.
+     * @param movieFile The filepath of the given movie, or null.
+     * @return The movie added or already present.
+     */
+    public Movie addMovie(MovieDb movieDb, File movieFile) {
+
+        publishMovie(prepareMovie(movieDb, movieFile), movieFile, null, null);
+        return moviesById.get(movieDb.getId());
+    }
+
+    /**
+     * Adds a movie in the background, see {@link #addMovie(String, File)}.
+     * @param movieName The name of the movie to add.
+     * @param movieFile The filepath of the given movie, or null.
+     * @param listener The listener to give the movie to, or null.
+     * @return The pending result, which can be waited for or cancelled.
+     */
+    public Future<Movie> addMovieAsync(final String movieName, final File movieFile,
+                                       AddListener listener) {
+        return addInBackground(new Callable<Movie>() {
+            @Override
+            public Movie call() {
+                return addMovie(movieName, movieFile);
+            }
+        }, listener);
+    }
+
+    /**
+     * Adds a movie chosen from search results in the background, see
+     * {@link #addMovie(MovieDb, File)}.
+     * @param movieDb The search result to add.
+     * @param movieFile The filepath of the given movie, or null.
+     * @param listener The listener to give the movie to, or null.
+     * @return The pending result, which can be waited for or cancelled.
+     */
+    public Future<Movie> addMovieAsync(final MovieDb movieDb, final File movieFile,
+                                       AddListener listener) {
+        return addInBackground(new Callable<Movie>() {
+            @Override
+            public Movie call() {
+                return addMovie(movieDb, movieFile);
+            }
+        }, listener);
+    }
+
+    private Future<Movie> addInBackground(final Callable<Movie> add, final AddListener listener) {
+        return addExecutor.submit(new Callable<Movie>() {
+            @Override
+            public Movie call() throws Exception {
+                Movie movie = null;
+                try {
+                    movie = add.call();
+                    return movie;
+                }
+                finally {
+                    if (listener != null) {
+                        listener.movieAdded(movie);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns suggestions for a partly typed title straight away, from the
+     * results of it or of a shorter query it starts with searched recently.
+     * @param query The title typed so far, optionally with its year.
+     * @return The movies found, or null if nothing relevant has been searched.
+     */
+    public List<MovieDb> getCachedSuggestions(String query) {
+        return suggestionCache.getNearest(query);
+    }
+
+    /**
+     * Searches for movies matching a partly typed title in the background.
+     * Cancelling the search, for example because the user has typed more,
+     * stops it waiting for its turn to reach TheMovieDb and keeps the listener
+     * from hearing of it.
+     * @param query The title typed so far, optionally with its year.
+     * @param listener The listener to give the movies found to. Not called if
+     * the search is cancelled, and given no movies if it fails.
+     * @return The pending search, which can be cancelled.
+     */
+    public Future<?> suggestMovies(final String query, final SuggestionListener listener) {
+        return suggestionExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<MovieDb> suggestions = suggestionCache.get(query);
+                if (suggestions == null) {
+                    suggestions = searchSuggestions(query);
+                }
+
+                if (!Thread.currentThread().isInterrupted()) {
+                    listener.suggestionsFound(query, suggestions);
+                }
+            }
+        });
+    }
+
+    /**
+     * Searches for the movies to suggest for a query, with the one
+     * {@link #addMovie(String, File)} would pick first.
+     * @param query The title typed so far, searched as typed.
+     * @return The movies found, or an empty list if the search failed.
+     */
+    private List<MovieDb> searchSuggestions(String query) {
+        ReleaseName movieName = ReleaseName.typed(query);
+        List<MovieDb> results;
+
+        try {
+            results = searchMovie(movieName.getTitle(), 0);
+        }
+        catch (MovieDbException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                LOGGER.log(Level.WARNING, "Search failed for " + query + ": " + e.getMessage());
+            }
+            return Collections.emptyList();
+        }
+
+        List<MovieDb> suggestions = new ArrayList<>(results);
+        if (!suggestions.isEmpty()) {
+            MovieDb best = movieName.bestMatch(results);
+            suggestions.remove(best);
+            suggestions.add(0, best);
+        }
+
+        suggestionCache.put(query, suggestions);
+        return suggestions;
+    }
+
+    /**
+     * Scans a folder and its subfolders in the background for movie files,
+     * adding each movie found to the current movie list. Files that have not
+     * changed since they were last seen are skipped, and movies whose files
+     * have all been deleted are removed. The folder is remembered as one of
+     * the library folders.
+     * @param folder The folder to scan.
+     * @param listener The listener to notify of progress.
+     * @return The running scan, which can be used to cancel it.
+     */
+    public MovieScanner scanForMovies(File folder, MovieScanner.ScanListener listener) {
+        addLibraryFolder(folder);
+
+        MovieScanner scanner = new MovieScanner(this, folder, scanExcludes, listener);
+        scanner.start();
+        return scanner;
+    }
+
+    /**
+     * Retrieves the folders that have been scanned.
+     * @return The paths of the folders.
+     */
+    public List<String> getLibraryFolders() {
+        if (libraryDatabase == null) {
+            return Collections.emptyList();
+        }
+
+        try {
+            return libraryDatabase.loadFolders();
+        }
+        catch (SQLException e) {
+            LOGGER.log(Level.WARNING, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private void addLibraryFolder(File folder) {
+        if (libraryDatabase != null) {
+            try {
+                libraryDatabase.addFolder(folder.getAbsolutePath());
+            }
+            catch (SQLException e) {
+                LOGGER.log(Level.WARNING, e.getMessage());
+            }
+        }
+
+        LibraryWatcher watcher = libraryWatcher;
+        if (watcher != null) {
+            watcher.watch(folder.toPath());
+        }
+    }
+
+    /**
+     * Starts or stops watching the library folders, keeping the library in
+     * step with files as they are added, changed or deleted. Starting also
+     * catches up with changes made while the folders were not watched.
+     * @param watching Whether to watch the library folders.
+     */
+    public synchronized void setWatching(boolean watching) {
+        if (watching == (libraryWatcher != null)) {
+            return;
+        }
+
+        if (!watching) {
+            libraryWatcher.close();
+            libraryWatcher = null;
+            return;
+        }
+
+        try {
+            libraryWatcher = new LibraryWatcher(this, scanExcludes);
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not watch library folders: " + e.getMessage());
+            return;
+        }
+
+        for (String folder : getLibraryFolders()) {
+            libraryWatcher.watch(new File(folder).toPath());
+        }
+    }
+
+    public boolean isWatching() {
+        return libraryWatcher != null;
+    }
+
+    /**
+     * Returns whether a movie file is in the file index and has not changed
+     * since it was recorded.
+     * @param file The movie file.
+     * @param attributes The current attributes of the file.
+     * @return True if the file can be skipped.
+     */
+    boolean isFileUnchanged(Path file, BasicFileAttributes attributes) {
+        FileRecord record = getFileIndex().get(file.toString());
+        return record != null && record.matches(attributes);
+    }
+
+    /**
+     * Removes the files in the file index at or under a path that no longer
+     * exist, taking them from their movies. A movie left with no files is
+     * removed from the library.
+     * @param path The file or folder to check.
+     * @param seen The paths known to exist, which are not checked again.
+     */
+    void removeMissingFiles(File path, Set<String> seen) {
+        String root = path.getAbsolutePath();
+        String prefix = root.endsWith(File.separator) ? root : root + File.separator;
+
+        for (FileRecord record : getFileIndex().values()) {
+            String filePath = record.getPath();
+            if (!filePath.equals(root) && !filePath.startsWith(prefix)) {
+                continue;
+            }
+            // A folder that could not be read looks empty, so check before removing.
+            if (seen.contains(filePath) || Files.exists(new File(filePath).toPath())) {
+                continue;
+            }
+
+            removeMovieFile(record);
+        }
+    }
+
+    private void removeMovieFile(FileRecord record) {
+        forgetFile(record.getPath());
+
+        Movie movie = moviesById.get(record.getMovieId());
+        if (movie == null || !movie.removeMovieFile(new File(record.getPath()))) {
+            return;
+        }
+
+        if (movie.getMovieFiles().isEmpty()) {
+            removeMovie(movie);
+        }
+        else {
             addDatabaseMovie(movie);
-            return movie;
         }
+    }
 
-        return null;
+    /**
+     * Adds a file to the movie of a known file with the same content, without
+     * looking it up. If the known file no longer exists the file has been
+     * moved or renamed, and takes its place; otherwise it is another copy.
+     * @param movieFile The movie file.
+     * @param attributes The attributes of the file.
+     * @param fingerprint The fingerprint of the file.
+     * @return True if the file's movie was known.
+     */
+    boolean claimKnownFile(File movieFile, BasicFileAttributes attributes, String fingerprint) {
+        FileRecord known = getFingerprintIndex().get(fingerprint);
+        if (known == null) {
+            return false;
+        }
+
+        Movie movie = moviesById.get(known.getMovieId());
+        if (movie == null) {
+            return false;
+        }
+
+        File knownFile = new File(known.getPath());
+        boolean moved = !knownFile.equals(movieFile) && !knownFile.exists();
+        if (moved) {
+            forgetFile(known.getPath());
+            movie.removeMovieFile(knownFile);
+        }
+
+        indexFile(movieFile, attributes, fingerprint, movie.getMovieId());
+        if (movie.addMovieFile(movieFile) || moved) {
+            addDatabaseMovie(movie);
+        }
+        return true;
+    }
+
+    private ConcurrentMap<String, FileRecord> getFingerprintIndex() {
+        // Loaded along with the file index.
+        getFileIndex();
+        return filesByFingerprint;
+    }
+
+    private Map<String, FileRecord> getFileIndex() {
+        ConcurrentMap<String, FileRecord> index = fileIndex;
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (fileIndexLock) {
+            if (fileIndex == null) {
+                index = new ConcurrentHashMap<>();
+                ConcurrentMap<String, FileRecord> fingerprints = new ConcurrentHashMap<>();
+
+                if (libraryDatabase != null) {
+                    try {
+                        for (FileRecord record : libraryDatabase.loadFiles()) {
+                            index.put(record.getPath(), record);
+                            if (record.getFingerprint() != null) {
+                                fingerprints.put(record.getFingerprint(), record);
+                            }
+                        }
+                    }
+                    catch (SQLException e) {
+                        LOGGER.log(Level.WARNING, e.getMessage());
+                    }
+                }
+
+                filesByFingerprint = fingerprints;
+                fileIndex = index;
+            }
+            return fileIndex;
+        }
+    }
+
+    /**
+     * Records a movie file in the file index.
+     * @param movieFile The movie file.
+     * @param attributes The attributes of the file, or null to read them.
+     * @param fingerprint The fingerprint of the file, or null to take it.
+     * @param movieId The id of the movie the file belongs to.
+     */
+    private void indexFile(File movieFile, BasicFileAttributes attributes, String fingerprint,
+                           int movieId) {
+        try {
+            if (attributes == null) {
+                attributes = Files.readAttributes(movieFile.toPath(), BasicFileAttributes.class);
+            }
+            if (fingerprint == null) {
+                fingerprint = FileFingerprint.of(movieFile.toPath());
+            }
+        }
+        catch (IOException e) {
+            return;
+        }
+
+        FileRecord record = new FileRecord(movieFile.getPath(), attributes, fingerprint, movieId);
+        getFileIndex().put(record.getPath(), record);
+        getFingerprintIndex().put(fingerprint, record);
+        if (libraryWriter != null) {
+            libraryWriter.addFile(record);
+        }
+    }
+
+    private void forgetFile(String path) {
+        FileRecord record = getFileIndex().remove(path);
+        if (record == null) {
+            return;
+        }
+
+        if (record.getFingerprint() != null) {
+            getFingerprintIndex().remove(record.getFingerprint(), record);
+        }
+        if (libraryWriter != null) {
+            libraryWriter.removeFile(record);
+        }
+    }
+
+    /**
+     * Looks up a movie and fetches the information kept for it, without
+     * changing the library: nothing is claimed, saved or indexed until the
+     * movie is published, see {@link #publishMovie}.
+     * @param movieName The name of the movie to look up.
+     * @param movieFile The filepath of the given movie.
+     * @return The library's movie if it already has it, otherwise a new
+     * movie, or null if the movie could not be found.
+     */
+    Movie lookupMovie(ReleaseName movieName, File movieFile) {
+        MovieDb movieDb = findMovieOnce(movieName);
+        if (movieDb == null) {
+            return null;
+        }
+
+        return prepareMovie(movieDb, movieFile);
+    }
+
+    /**
+     * Returns the library's movie with the same id as some information, or
+     * else creates a movie, not yet in the library, with the information
+     * kept for new movies, see {@link #setScanProfile(FetchProfile)}.
+     */
+    private Movie prepareMovie(MovieDb movieDb, File movieFile) {
+        // Most movies found again are already loaded: check before building one.
+        Movie existing = moviesById.get(movieDb.getId());
+        if (existing != null) {
+            return existing;
+        }
+
+        FetchProfile profile = scanProfile;
+        if (profile != FetchProfile.LIST) {
+            MovieDb movieInfo = getMovieInfo(movieDb.getId(), profile);
+            if (movieInfo != null) {
+                movieDb = movieInfo;
+            }
+            else {
+                profile = FetchProfile.LIST;
+            }
+        }
+
+        return new Movie(this, movieDb, profile, movieFile);
+    }
+
+    /**
+     * Adds a looked up movie to the library: a new movie is claimed, saved,
+     * has its file indexed and is added to the movie list, and if the
+     * library already has the movie the file is added to that one instead.
+     * The file is indexed only after its movie is saved, so a scan stopped
+     * part way never leaves a file indexed whose movie was not kept.
+     * @param movie The movie, from {@link #lookupMovie(ReleaseName, File)}.
+     * @param movieFile The filepath of the movie, or null.
+     * @param attributes The attributes of the file, or null to read them.
+     * @param fingerprint The fingerprint of the file, or null to take it.
+     * @return The index the movie was added at, or -1 if the library already
+     * had it.
+     */
+    int publishMovie(Movie movie, File movieFile, BasicFileAttributes attributes,
+                     String fingerprint) {
+        Movie existing = moviesById.putIfAbsent(movie.getMovieId(), movie);
+        int index = -1;
+
+        if (existing == null) {
+            addDatabaseMovie(movie);
+            index = addSorted(movie);
+        }
+        else if (movieFile != null && existing.addMovieFile(movieFile)) {
+            addDatabaseMovie(existing);
+        }
+
+        if (movieFile != null) {
+            indexFile(movieFile, attributes, fingerprint, movie.getMovieId());
+        }
+        return index;
     }
 
     /**
@@ -180,112 +1069,370 @@ public class MovieManager {
      * @param movie The movie to remove.
      */
     public void removeMovie(Movie movie) {
-        movieList.remove(movie);
+        removeSorted(movie);
+        moviesById.remove(movie.getMovieId(), movie);
         removeDatabaseMovie(movie);
+
+        // So that a rescan finds the files again.
+        for (File movieFile : movie.getMovieFiles()) {
+            forgetFile(movieFile.getPath());
+        }
     }
 
     /**
-     * Retrieves the current movie list in this movie manager.
+     * Retrieves the current movie list in this movie manager, in the current
+     * sort order. The list is a snapshot: it does not change, and later
+     * changes are not seen through it.
      * @return The current movie list.
      */
     public List<Movie> getMovieList() {
-        return movieList;
+        return movieIndex.asList();
+    }
+
+    /**
+     * Retrieves a snapshot of the current movie list, which can be read from
+     * any thread. See {@link #getMovieList()}.
+     * @return The current movie list.
+     */
+    public MovieIndex getMovieIndex() {
+        return movieIndex;
+    }
+
+    /**
+     * Finds the movies in the movie list whose title, cast, genres or
+     * keywords match a query, allowing for partly typed words and typing
+     * mistakes. See {@link MovieSearchIndex}.
+     * @param query The words to look for.
+     * @return The matching movies, or null if the query has no words and so
+     * matches every movie.
+     */
+    public Set<Movie> findMovies(String query) {
+        return searchIndex.search(query);
     }
 
     /**
-     * Returns the complete URL of a specified partial image path.
-     * @param path The path of the image to get the complete URL for.
-     * @return The image URL, or null if an image could not be obtained.
+     * Finds the stored movies matching a query, a page at a time. The
+     * database does the filtering and sorting with its indexes, so a page
+     * costs little however large the library is. Changes are saved in the
+     * background, so a movie changed a moment ago may not be found yet.
+     * @param query The query, see {@link MovieQuery}.
+     * @param offset The number of matching movies to skip.
+     * @param limit The maximum number of movies to return.
+     * @return The movies, in the query's order. Movies that are in the movie
+     * list are returned as they are there.
      */
-    public URL getImageUrl(String path, String size) {
+    public List<Movie> queryMovies(MovieQuery query, int offset, int limit) {
+        if (libraryDatabase == null) {
+            return Collections.emptyList();
+        }
+
+        List<Movie> stored;
         try {
-            return movieDatabase.createImageUrl(path, size);
-        } catch (MovieDbException e) {
-            LOGGER.log(Level.SEVERE, e.getResponse());
+            stored = libraryDatabase.queryMovies(this, query, offset, limit);
+        }
+        catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not query " + query + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+
+        List<Movie> movies = new ArrayList<>(stored.size());
+        for (Movie movie : stored) {
+            Movie existing = moviesById.get(movie.getMovieId());
+            movies.add(existing != null ? existing : movie);
+        }
+        return movies;
+    }
+
+    /**
+     * Counts the stored movies matching a query, see
+     * {@link #queryMovies(MovieQuery, int, int)}.
+     * @param query The query.
+     * @return The number of matching movies.
+     */
+    public int countMovies(MovieQuery query) {
+        if (libraryDatabase == null) {
+            return 0;
+        }
+
+        try {
+            return libraryDatabase.countMovies(query);
+        }
+        catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not count " + query + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Registers a listener for changes to the current movie list.
+     * @param listener The listener to add.
+     */
+    public void addLibraryListener(LibraryListener listener) {
+        libraryListeners.add(listener);
+    }
+
+    public SortOrder getSortOrder() {
+        return movieIndex.getOrder();
+    }
+
+    /**
+     * Changes the order of the current movie list. Every order is kept up to
+     * date as movies are added, so this does not sort anything.
+     * @param sortOrder The new order.
+     */
+    public synchronized void setSortOrder(SortOrder sortOrder) {
+        movieIndex = movieIndex.withOrder(sortOrder);
+
+        for (LibraryListener listener : libraryListeners) {
+            listener.orderChanged(movieIndex);
+        }
+    }
+
+    /**
+     * Downloads an image from the metadata provider.
+     * @param path The TheMovieDb path of the image.
+     * @param size The TheMovieDb size to download the image at.
+     * @return The encoded image, or null if it could not be downloaded.
+     */
+    public byte[] downloadImage(String path, String size) {
+        long start = System.nanoTime();
+        try {
+            return metadataProvider.getImage(path, size);
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not download image " + path);
             return null;
         }
+        finally {
+            DOWNLOAD_TIMER.stop(start);
+        }
     }
 
     /**
      * Returns the release year of the specified movie.
      * @param movie The movie to get the year for.
-     * @return The release year of the specified movie.
+     * @return The release year of the specified movie, or an empty string if
+     * it is not known.
      */
     public String getReleaseYear(Movie movie) {
-        String releaseDate = movie.getMovie().getReleaseDate();
-        return releaseDate.substring(0, releaseDate.indexOf('-'));
+        int releaseYear = movie.getReleaseYear();
+        return releaseYear > 0 ? String.valueOf(releaseYear) : "";
     }
 
     /**
-     * Searches for a given movie using the TheMovieDB API.
+     * Searches for a given movie, sharing the result with any search for the
+     * same normalised title and year already in progress.
      * @param movieName The name of the movie to search.
-     * @return The first movie found, or if none were found then null.
+     * @return The best matching movie found, or if none were found then null.
      */
-    private MovieDb findMovie(String movieName) {
+    private MovieDb findMovieOnce(final ReleaseName movieName) {
+        return titleLookups.execute(MovieDbCache.normaliseQuery(movieName.getTitle())
+                + "|" + movieName.getYear(), new Callable<MovieDb>() {
+            @Override
+            public MovieDb call() {
+                return findMovie(movieName);
+            }
+        });
+    }
 
-        LOGGER.log(Level.INFO, "Searching for movie: " + movieName);
+    /**
+     * Searches for a given movie using the TheMovieDB API, and picks the
+     * result that best matches its title and year. Search results carry
+     * everything in {@link FetchProfile#LIST}, so no more is fetched.
+     * @param movieName The name of the movie to search.
+     * @return The best matching movie found, or if none were found then null.
+     */
+    private MovieDb findMovie(ReleaseName movieName) {
+
+        boolean logging = LOGGER.isLoggable(Level.INFO);
+        if (logging) {
+            LOGGER.log(Level.INFO, "Searching for movie: " + movieName);
+        }
+        long start = System.nanoTime();
         MovieDb result;
 
         try {
-            List<MovieDb> results = movieDatabase.searchMovie(
-                    movieName, 0, null, false, 0).getResults();
+            List<MovieDb> results = Collections.emptyList();
+            if (movieName.getYear() > 0) {
+                results = searchMovie(movieName.getTitle(), movieName.getYear());
+            }
+            // The year may be the wrong one, so try without it.
+            if (results.isEmpty()) {
+                results = searchMovie(movieName.getTitle(), 0);
+            }
 
-            for (MovieDb potentialMovie : results) {
-                LOGGER.log(Level.INFO, "Potential movie: " + potentialMovie.getTitle());
+            if (logging) {
+                for (MovieDb potentialMovie : results) {
+                    LOGGER.log(Level.INFO, "Potential movie: " + potentialMovie.getTitle());
+                }
             }
 
             if (results.isEmpty()) {
                 throw new MovieDbException(MovieDbException
-                        .MovieDbExceptionType.MOVIE_ID_NOT_FOUND, movieName);
+                        .MovieDbExceptionType.MOVIE_ID_NOT_FOUND, movieName.toString());
             }
             else {
-                MovieDb chosenMovie = results.get(0);
-                LOGGER.log(Level.INFO, "Picking first  matching movie: " + chosenMovie.getTitle());
-                String searchTerms = "belongsToCollection,genres,homepage," +
-                        "imdbID,overview,productionCompanies,spokenLanguages," +
-                        "tagline,status,alternativeTitles,casts,images,keywords," +
-                        "releases,trailers,translations,similarMovies,reviews,lists";
-                result = movieDatabase.getMovieInfo(chosenMovie.getId(), "en", searchTerms);
+                MovieDb chosenMovie = movieName.bestMatch(results);
+                if (logging) {
+                    LOGGER.log(Level.INFO, "Picking best matching movie: " + chosenMovie.getTitle());
+                }
+                result = chosenMovie;
             }
         }
         catch (MovieDbException e) {
-            LOGGER.log(Level.WARNING, "No movies found.");
+            if (e.getExceptionType() == MovieDbException.MovieDbExceptionType.MOVIE_ID_NOT_FOUND) {
+                LOGGER.log(Level.WARNING, "No movies found.");
+                NOT_FOUND.increment();
+            }
+            else {
+                LOGGER.log(Level.WARNING, "Search failed for " + movieName + ": " + e.getMessage());
+                LOOKUP_FAILED.increment();
+            }
             result = null;
         }
 
+        FIND_TIMER.stop(start);
         return result;
     }
 
     /**
-     * Adds a movie the current movie list, keeping the list sorted.
-     * @param movie The movie to add.
+     * Searches the metadata provider for a movie title, using cached results where
+     * possible. Expired results are used if TheMovieDb cannot be reached.
+     * @param title The title of the movie to search.
+     * @param year The release year of the movie, or 0 for any year.
+     * @return The search results.
      */
-    private void addSorted(Movie movie) {
+    private List<MovieDb> searchMovie(final String title, final int year)
+            throws MovieDbException {
+        List<MovieDb> results = movieDbCache.getSearch(title, year, false);
+        if (results != null) {
+            SEARCH_CACHE_HITS.increment();
+            return results;
+        }
+        SEARCH_CACHE_MISSES.increment();
 
-        if (movieList.size() == 0) {
-            movieList.add(movie);
-            return;
+        try {
+            results = requestLimiter.call("search for " + title,
+                    new RequestLimiter.Request<List<MovieDb>>() {
+                @Override
+                public List<MovieDb> execute() throws MovieDbException {
+                    return metadataProvider.searchMovie(title, year);
+                }
+            });
+        }
+        catch (MovieDbException e) {
+            results = movieDbCache.getSearch(title, year, true);
+            if (results == null) {
+                throw e;
+            }
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.log(Level.INFO, "Using expired search results for: " + title);
+            }
+            return results;
         }
 
-        for (int i = 0; i < movieList.size(); i++) {
-            Movie listMovie = movieList.get(i);
-            if (movie.getMovie().getTitle().compareToIgnoreCase(listMovie.getMovie().getTitle()) < 0) {
-                movieList.add(i, movie);
-                return;
+        movieDbCache.putSearch(title, year, results);
+        return results;
+    }
+
+    /**
+     * Retrieves the information of a movie, sharing the result with any
+     * request for the same movie and profile already in progress.
+     * @param movieId The TheMovieDb id of the movie.
+     * @param profile The information to retrieve.
+     * @return The movie information, or null if it could not be retrieved.
+     */
+    private MovieDb getMovieInfo(final int movieId, final FetchProfile profile) {
+        return movieInfoLookups.execute(movieId + ":" + profile, new Callable<MovieDb>() {
+            @Override
+            public MovieDb call() {
+                return fetchMovieInfo(movieId, profile);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the information of a movie from the metadata provider, using
+     * cached information where possible. Expired information is used if
+     * TheMovieDb cannot be reached.
+     * @param movieId The TheMovieDb id of the movie.
+     * @param profile The information to retrieve.
+     * @return The movie information, or null if it could not be retrieved.
+     */
+    private MovieDb fetchMovieInfo(final int movieId, final FetchProfile profile) {
+        MovieDb movieDb = movieDbCache.getMovie(movieId, profile, false);
+        if (movieDb != null) {
+            MOVIE_CACHE_HITS.increment();
+            return movieDb;
+        }
+        MOVIE_CACHE_MISSES.increment();
+
+        long start = System.nanoTime();
+        try {
+            movieDb = requestLimiter.call("information for movie " + movieId,
+                    new RequestLimiter.Request<MovieDb>() {
+                @Override
+                public MovieDb execute() throws MovieDbException {
+                    return metadataProvider.getMovieInfo(movieId, profile);
+                }
+            });
+        }
+        catch (MovieDbException e) {
+            movieDb = movieDbCache.getMovie(movieId, profile, true);
+            if (movieDb == null) {
+                LOGGER.log(Level.WARNING, "Movie information not found: " + movieId);
             }
+            return movieDb;
+        }
+        finally {
+            MOVIE_FETCH_TIMER.stop(start);
         }
 
-        movieList.add(movie);
+        movieDbCache.putMovie(movieId, profile, movieDb);
+        return movieDb;
     }
 
-    public static void main(String[] args) throws IOException {
+    /**
+     * Adds a movie the current movie list, keeping the list sorted.
+     * @param movie The movie to add.
+     * @return The index the movie was added at.
+     */
+    private synchronized int addSorted(Movie movie) {
+        movieIndex = movieIndex.withMovie(movie);
+        searchIndex.add(movie);
+        int index = movieIndex.indexOf(movie);
 
-        MovieManager movieManager = new MovieManager();
-        System.out.println("Enter a movie to search for: ");
-        movieManager.addMovie(new BufferedReader(new InputStreamReader(System.in)).readLine(), null);
-        for (Movie movie : movieManager.movieList) {
-            System.out.println(movie.toString());
+        for (LibraryListener listener : libraryListeners) {
+            listener.moviesAdded(movieIndex, new int[] {index});
         }
+        return index;
+    }
+
+    /**
+     * Removes a movie from the current movie list.
+     * @param movie The movie to remove.
+     * @return The index the movie was removed from, or -1 if it was not in the list.
+     */
+    private synchronized int removeSorted(Movie movie) {
+        int index = movieIndex.indexOf(movie);
+        if (index < 0) {
+            return -1;
+        }
+
+        movieIndex = movieIndex.withoutMovie(movie);
+        searchIndex.remove(movie);
+
+        for (LibraryListener listener : libraryListeners) {
+            listener.movieRemoved(movieIndex, index);
+        }
+        return index;
+    }
+
+    /**
+     * Runs without a user interface, see {@link BulkImporter}.
+     */
+    public static void main(String[] args) {
+        BulkImporter.main(args);
     }
 
 }
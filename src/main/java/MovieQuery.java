@@ -0,0 +1,141 @@
+/**
+ * A question about the stored library for the database to answer, such as
+ * "the movies with this actor from the 1990s, highest rated first". Each
+ * condition left unset matches every movie.
+ *
+ * Queries do not change: each with method returns a new query, so a query
+ * can be built up a condition at a time and shared between threads.
+ */
+public class MovieQuery {
+
+    private static final MovieQuery ALL =
+            new MovieQuery(null, null, 0, Integer.MAX_VALUE, 0, SortOrder.TITLE);
+
+    private final String person;
+    private final String genre;
+    private final int fromYear;
+    private final int toYear;
+    private final float minRating;
+    private final SortOrder order;
+
+    private MovieQuery(String person, String genre, int fromYear, int toYear,
+                       float minRating, SortOrder order) {
+        this.person = person;
+        this.genre = genre;
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        this.minRating = minRating;
+        this.order = order;
+    }
+
+    /**
+     * Returns a query matching every movie, in title order.
+     * @return The query.
+     */
+    public static MovieQuery all() {
+        return ALL;
+    }
+
+    /**
+     * Returns this query, only matching movies with a person in their cast.
+     * @param person The name of the person, in any case.
+     * @return The new query.
+     */
+    public MovieQuery withPerson(String person) {
+        return new MovieQuery(person, genre, fromYear, toYear, minRating, order);
+    }
+
+    /**
+     * Returns this query, only matching movies of a genre.
+     * @param genre The name of the genre, in any case.
+     * @return The new query.
+     */
+    public MovieQuery withGenre(String genre) {
+        return new MovieQuery(person, genre, fromYear, toYear, minRating, order);
+    }
+
+    /**
+     * Returns this query, only matching movies released in a range of years.
+     * @param fromYear The first year.
+     * @param toYear The last year.
+     * @return The new query.
+     */
+    public MovieQuery withYears(int fromYear, int toYear) {
+        return new MovieQuery(person, genre, fromYear, toYear, minRating, order);
+    }
+
+    /**
+     * Returns this query, only matching movies rated at least a given rating.
+     * @param minRating The lowest rating, out of 10.
+     * @return The new query.
+     */
+    public MovieQuery withMinRating(float minRating) {
+        return new MovieQuery(person, genre, fromYear, toYear, minRating, order);
+    }
+
+    /**
+     * Returns this query with its matches in another order.
+     * @param order The order.
+     * @return The new query.
+     */
+    public MovieQuery withOrder(SortOrder order) {
+        return new MovieQuery(person, genre, fromYear, toYear, minRating, order);
+    }
+
+    /**
+     * @return The person matching movies have in their cast, or null.
+     */
+    public String getPerson() {
+        return person;
+    }
+
+    /**
+     * @return The genre of matching movies, or null.
+     */
+    public String getGenre() {
+        return genre;
+    }
+
+    public int getFromYear() {
+        return fromYear;
+    }
+
+    public int getToYear() {
+        return toYear;
+    }
+
+    public float getMinRating() {
+        return minRating;
+    }
+
+    public SortOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns whether this query only matches movies released in some years.
+     * @return True if the years are limited.
+     */
+    public boolean hasYears() {
+        return fromYear > 0 || toYear < Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("movies");
+        if (person != null) {
+            builder.append(" with ").append(person);
+        }
+        if (genre != null) {
+            builder.append(" in ").append(genre);
+        }
+        if (hasYears()) {
+            builder.append(" from ").append(fromYear).append(" to ").append(toYear);
+        }
+        if (minRating > 0) {
+            builder.append(" rated ").append(minRating).append(" or more");
+        }
+        return builder.append(" by ").append(order).toString();
+    }
+
+}
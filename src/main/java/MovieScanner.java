@@ -0,0 +1,400 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Scans a folder for movie files and adds the movies found to a movie manager.
+ *
+ * The scan runs as a pipeline of stages, each with its own worker threads,
+ * connected by bounded queues: discover files (see {@link MovieFileWalker}),
+ * match them to known files, parse titles, look up movie information, and
+ * publish each movie: save it, index its file and add it to the movie list.
+ * Images are not fetched until a movie is displayed. A stage that falls
+ * behind fills its input queue, which holds up the stages before it, so a
+ * large folder never has more lookups in flight than there are lookup
+ * workers.
+ *
+ * Files that are in the movie manager's file index and have not changed are
+ * counted but go no further, so rescanning a folder only looks up new and
+ * changed files. Other files are fingerprinted, see {@link FileFingerprint},
+ * and a file with the same content as a known file is a moved or copied
+ * file of the same movie, which needs no lookup. Once every file has been
+ * matched, indexed files under the folder that were not found are removed
+ * from the library.
+ */
+public class MovieScanner {
+
+    /**
+     * Receives the results of a scan. Methods are called from the scan's
+     * worker threads.
+     */
+    public interface ScanListener {
+
+        /**
+         * A movie has been added to the movie list.
+         * @param movie The movie added.
+         * @param index The index it was added at.
+         */
+        void movieAdded(Movie movie, int index);
+
+        /**
+         * A movie file has been processed, whether or not a movie was found.
+         * @param processed The number of movie files processed so far.
+         * @param found The number of movie files found so far.
+         */
+        void progressChanged(int processed, int found);
+
+        /**
+         * The scan has finished. No more methods are called after this.
+         * @param cancelled Whether the scan was cancelled.
+         */
+        void scanFinished(boolean cancelled);
+    }
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long OFFER_WAIT_MS = 100;
+    private static final int MATCH_WORKERS = 2;
+    private static final int PARSE_WORKERS = 1;
+    private static final int LOOKUP_WORKERS = 4;
+    private static final int PUBLISH_WORKERS = 1;
+
+    /** Passed down the queues to mark the end of the scan. */
+    private static final Object END = new Object();
+
+    private final MovieManager movieManager;
+    private final File folder;
+    private final ScanListener listener;
+    private final MovieFileWalker walker;
+
+    private final List<Thread> threads = new ArrayList<>();
+    /** The scan's threads still running, and one more while they are started. */
+    private final AtomicInteger runningThreads = new AtomicInteger(1);
+    /** The paths of the movie files found under the folder. */
+    private final Set<String> seen =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger found = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile boolean cancelled;
+
+    /**
+     * @param movieManager The movie manager to add movies to.
+     * @param folder The folder to scan.
+     * @param excludePatterns Glob patterns for paths to skip, see {@link MovieFileWalker}.
+     * @param listener The listener to notify of progress.
+     */
+    public MovieScanner(MovieManager movieManager, File folder, List<String> excludePatterns,
+                        ScanListener listener) {
+        this.movieManager = movieManager;
+        this.folder = folder;
+        this.listener = listener;
+        this.walker = new MovieFileWalker(excludePatterns);
+    }
+
+    /**
+     * Starts the scan in the background.
+     */
+    public void start() {
+        BlockingQueue<Object> files = newQueue();
+        BlockingQueue<Object> unknown = newQueue();
+        BlockingQueue<Object> names = newQueue();
+        BlockingQueue<Object> movies = newQueue();
+
+        new Stage<ScanItem>("match", MATCH_WORKERS, files, unknown) {
+            @Override
+            protected Object process(ScanItem item) {
+                try {
+                    item.fingerprint = FileFingerprint.of(item.file.toPath());
+                }
+                catch (IOException e) {
+                    // Looked up by name instead.
+                    return item;
+                }
+
+                if (movieManager.claimKnownFile(item.file, item.attributes, item.fingerprint)) {
+                    return null;
+                }
+                return item;
+            }
+
+            @Override
+            protected void finished() {
+                // Only now has every moved file been claimed by its movie,
+                // so its old path can be forgotten without losing the movie.
+                if (!cancelled) {
+                    movieManager.removeMissingFiles(folder, seen);
+                }
+            }
+        };
+
+        new Stage<ScanItem>("parse", PARSE_WORKERS, unknown, names) {
+            @Override
+            protected Object process(ScanItem item) {
+                item.name = ReleaseName.parse(item.file.getName());
+                return item;
+            }
+        };
+
+        new Stage<ScanItem>("lookup", LOOKUP_WORKERS, names, movies) {
+            @Override
+            protected Object process(ScanItem item) {
+                item.movie = movieManager.lookupMovie(item.name, item.file);
+                return item.movie != null ? item : null;
+            }
+        };
+
+        // Only this stage changes the library, so a cancelled scan leaves
+        // nothing half added.
+        new Stage<ScanItem>("publish", PUBLISH_WORKERS, movies, null) {
+            @Override
+            protected Object process(ScanItem item) {
+                int index = movieManager.publishMovie(item.movie, item.file, item.attributes,
+                        item.fingerprint);
+                if (index >= 0) {
+                    listener.movieAdded(item.movie, index);
+                }
+                return null;
+            }
+        };
+
+        startDiscovery(files);
+        threadExited();
+    }
+
+    /**
+     * Stops the scan. Movies already added stay in the movie list. The
+     * listener is told the scan has finished once its threads have stopped,
+     * so nothing more is added after that.
+     */
+    public void cancel() {
+        cancelled = true;
+        walker.cancel();
+
+        synchronized (threads) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void startDiscovery(final BlockingQueue<Object> files) {
+        startThread("scan-discover", new Runnable() {
+            @Override
+            public void run() {
+                walker.walk(folder.getAbsoluteFile().toPath(), new MovieFileWalker.FileListener() {
+                    @Override
+                    public void fileFound(Path file, BasicFileAttributes attributes) {
+                        found.incrementAndGet();
+                        seen.add(file.toString());
+
+                        if (movieManager.isFileUnchanged(file, attributes)) {
+                            itemProcessed();
+                        }
+                        else {
+                            offer(files, new ScanItem(file.toFile(), attributes));
+                        }
+                    }
+                });
+
+                offer(files, END);
+            }
+        });
+    }
+
+    /**
+     * Adds an item to a queue, waiting while it is full unless the scan is
+     * cancelled. The walker's threads are not ours to interrupt, so they
+     * check for cancellation instead.
+     */
+    private void offer(BlockingQueue<Object> queue, Object item) {
+        try {
+            while (!cancelled) {
+                if (queue.offer(item, OFFER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            walker.cancel();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void itemProcessed() {
+        listener.progressChanged(processed.incrementAndGet(), found.get());
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            listener.scanFinished(cancelled);
+        }
+    }
+
+    private void startThread(String name, final Runnable runnable) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                }
+                finally {
+                    threadExited();
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+
+        runningThreads.incrementAndGet();
+        synchronized (threads) {
+            threads.add(thread);
+        }
+
+        thread.start();
+    }
+
+    /**
+     * Finishes a cancelled scan once the last of its threads has stopped.
+     * A scan that runs to the end finishes from its last stage instead.
+     */
+    private void threadExited() {
+        if (runningThreads.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    private static BlockingQueue<Object> newQueue() {
+        return new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    }
+
+    /**
+     * A movie file on its way through the first stages of the scan.
+     */
+    private static class ScanItem {
+
+        private final File file;
+        private final BasicFileAttributes attributes;
+        private String fingerprint;
+        private ReleaseName name;
+        private Movie movie;
+
+        private ScanItem(File file, BasicFileAttributes attributes) {
+            this.file = file;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public String toString() {
+            return file.getPath();
+        }
+    }
+
+    /**
+     * A pipeline stage: a set of workers taking items from one queue and
+     * passing their results on to the next. When the end marker arrives the
+     * last worker to stop passes it on.
+     */
+    private abstract class Stage<I> implements Runnable {
+
+        private final BlockingQueue<Object> input;
+        private final BlockingQueue<Object> output;
+        private final AtomicInteger activeWorkers;
+        private final Metrics.Timer timer;
+
+        private Stage(String name, int workers, final BlockingQueue<Object> input,
+                      BlockingQueue<Object> output) {
+            this.input = input;
+            this.output = output;
+            activeWorkers = new AtomicInteger(workers);
+            timer = MovieManager.METRICS.timer("scan." + name);
+
+            // The items waiting for this stage, to see which stage holds the scan up.
+            MovieManager.METRICS.gauge("scan.queue." + name, new Metrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return input.size();
+                }
+            });
+
+            for (int i = 0; i < workers; i++) {
+                startThread("scan-" + name + "-" + i, this);
+            }
+        }
+
+        /**
+         * Processes a single item.
+         * @param item The item to process.
+         * @return The item to pass on, or null if it should go no further.
+         */
+        protected abstract Object process(I item);
+
+        /**
+         * Called once every item has been processed, by the last worker to
+         * stop, before the end marker is passed on.
+         */
+        protected void finished() {
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                while (!cancelled) {
+                    Object item = input.take();
+
+                    if (item == END) {
+                        // Let the other workers of this stage see it too.
+                        input.put(END);
+                        break;
+                    }
+
+                    Object result = null;
+                    long start = System.nanoTime();
+                    try {
+                        result = process((I) item);
+                    }
+                    catch (RuntimeException e) {
+                        MovieManager.LOGGER.log(Level.WARNING, "Scan failed for " + item, e);
+                    }
+                    timer.stop(start);
+
+                    if (result == null) {
+                        itemProcessed();
+                    }
+                    else if (output != null) {
+                        output.put(result);
+                    }
+                }
+
+                if (activeWorkers.decrementAndGet() == 0) {
+                    finished();
+                    if (output != null) {
+                        output.put(END);
+                    }
+                    else if (!cancelled) {
+                        finish();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // Cancelled.
+            }
+        }
+    }
+
+}
@@ -0,0 +1,333 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An inverted index of the words in each movie's title, cast, genres and
+ * keywords, for filtering the movie list as the user types.
+ *
+ * A query matches a movie if every word of the query matches a word of the
+ * movie. A query word matches the words it is the start of, so that a partly
+ * typed word already matches, and longer query words also match words that
+ * start with something a letter or two different, so that typing mistakes
+ * still find the movie. Case and accents are ignored.
+ *
+ * Words are found from the start of a query word through a sorted
+ * dictionary. Words with a typing mistake are found through the trigrams, the
+ * three letter runs, each word contains: a word a letter different from the
+ * query still shares most of its trigrams, and only the words that do are
+ * compared letter by letter.
+ *
+ * The index is kept up to date one movie at a time as movies are added,
+ * removed and filled in. A movie's cast and keywords are only indexed once
+ * its details have been fetched, which scans do unless told otherwise, see
+ * {@link MovieManager#setScanProfile(FetchProfile)}. It is safe to use from
+ * any thread.
+ */
+public class MovieSearchIndex {
+
+    /** Query words this long or longer may have one letter wrong, see {@link #maxEdits(int)}. */
+    private static final int ONE_EDIT_LENGTH = 4;
+    private static final int TWO_EDIT_LENGTH = 8;
+    private static final int GRAM = 3;
+
+    /** The words each movie was indexed under, so that it can be removed. */
+    private final Map<Movie, String[]> movieWords = new IdentityHashMap<>();
+    /** The movies with each word. */
+    private final TreeMap<String, Set<Movie>> postings = new TreeMap<>();
+    /** The words with each trigram, including the start of the word as "$". */
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+
+    /**
+     * Adds a movie to the index, or updates it if it is already there.
+     * @param movie The movie to add.
+     */
+    public synchronized void add(Movie movie) {
+        remove(movie);
+
+        Set<String> words = new HashSet<>();
+        addWords(words, movie.getTitle());
+        addWords(words, movie.getCastList());
+        addWords(words, movie.getGenreList());
+        addWords(words, movie.getKeywordList());
+
+        for (String word : words) {
+            Set<Movie> movies = postings.get(word);
+            if (movies == null) {
+                movies = Collections.newSetFromMap(new IdentityHashMap<Movie, Boolean>());
+                postings.put(word, movies);
+                addTrigrams(word);
+            }
+            movies.add(movie);
+        }
+
+        movieWords.put(movie, words.toArray(new String[words.size()]));
+    }
+
+    /**
+     * Removes a movie from the index.
+     * @param movie The movie to remove.
+     */
+    public synchronized void remove(Movie movie) {
+        String[] words = movieWords.remove(movie);
+        if (words == null) {
+            return;
+        }
+
+        for (String word : words) {
+            Set<Movie> movies = postings.get(word);
+            movies.remove(movie);
+            if (movies.isEmpty()) {
+                postings.remove(word);
+                removeTrigrams(word);
+            }
+        }
+    }
+
+    /**
+     * Indexes a movie again after its information has changed, if it is in
+     * the index.
+     * @param movie The movie to update.
+     */
+    public synchronized void update(Movie movie) {
+        if (movieWords.containsKey(movie)) {
+            add(movie);
+        }
+    }
+
+    public synchronized int size() {
+        return movieWords.size();
+    }
+
+    /**
+     * Finds the movies matching a query.
+     * @param query The words to look for.
+     * @return The matching movies, or null if the query has no words and so
+     * matches every movie.
+     */
+    public synchronized Set<Movie> search(String query) {
+        List<String> queryWords = new ArrayList<>(2);
+        addWords(queryWords, query);
+        if (queryWords.isEmpty()) {
+            return null;
+        }
+
+        List<Set<Movie>> matches = new ArrayList<>(queryWords.size());
+        for (String queryWord : queryWords) {
+            Set<Movie> wordMatches = find(queryWord);
+            if (wordMatches.isEmpty()) {
+                return Collections.emptySet();
+            }
+            matches.add(wordMatches);
+        }
+
+        // Start from the rarest word, so the set being intersected stays small.
+        Set<Movie> result = null;
+        for (Set<Movie> wordMatches : matches) {
+            if (result == null || wordMatches.size() < result.size()) {
+                result = wordMatches;
+            }
+        }
+
+        result = copyOf(result);
+        for (Set<Movie> wordMatches : matches) {
+            if (result.isEmpty()) {
+                break;
+            }
+            result.retainAll(wordMatches);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the movies with a word starting with the query word, or nearly
+     * starting with it.
+     */
+    private Set<Movie> find(String queryWord) {
+        Set<Movie> movies = Collections.newSetFromMap(new IdentityHashMap<Movie, Boolean>());
+
+        for (Set<Movie> wordMovies : postings.subMap(queryWord, true,
+                queryWord + Character.MAX_VALUE, false).values()) {
+            movies.addAll(wordMovies);
+        }
+
+        int maxEdits = maxEdits(queryWord.length());
+        if (maxEdits == 0) {
+            return movies;
+        }
+
+        // An edit changes at most three trigrams, so a close word shares the rest.
+        List<String> queryGrams = trigramsOf(queryWord);
+        int needed = queryGrams.size() - GRAM * maxEdits;
+        Map<String, Integer> shared = new HashMap<>();
+
+        for (String gram : queryGrams) {
+            Set<String> words = trigrams.get(gram);
+            if (words == null) {
+                continue;
+            }
+            for (String word : words) {
+                Integer count = shared.get(word);
+                shared.put(word, count == null ? 1 : count + 1);
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            String word = entry.getKey();
+            if (entry.getValue() >= needed && !word.startsWith(queryWord)
+                    && prefixDistance(queryWord, word, maxEdits) <= maxEdits) {
+                movies.addAll(postings.get(word));
+            }
+        }
+
+        return movies;
+    }
+
+    /**
+     * Returns the number of letters a query word may have wrong.
+     */
+    private static int maxEdits(int length) {
+        if (length >= TWO_EDIT_LENGTH) {
+            return 2;
+        }
+        return length >= ONE_EDIT_LENGTH ? 1 : 0;
+    }
+
+    /**
+     * Returns the fewest letters that have to be inserted, deleted, changed
+     * or swapped with a neighbour to turn the query word into the start of a
+     * word, or more than the limit if it is over the limit.
+     */
+    static int prefixDistance(String queryWord, String word, int limit) {
+        int rows = queryWord.length();
+        int columns = Math.min(word.length(), rows + limit);
+
+        int[] previous2 = new int[columns + 1];
+        int[] previous = new int[columns + 1];
+        int[] current = new int[columns + 1];
+        for (int j = 0; j <= columns; j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= rows; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char q = queryWord.charAt(i - 1);
+
+            for (int j = 1; j <= columns; j++) {
+                char w = word.charAt(j - 1);
+                int cost = q == w ? 0 : 1;
+                int distance = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1),
+                        previous[j - 1] + cost);
+
+                if (i > 1 && j > 1 && q == word.charAt(j - 2)
+                        && queryWord.charAt(i - 2) == w) {
+                    distance = Math.min(distance, previous2[j - 2] + 1);
+                }
+
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+
+        // The query word may end anywhere in the word.
+        int best = limit + 1;
+        for (int j = 0; j <= columns; j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+
+    private void addTrigrams(String word) {
+        for (String gram : trigramsOf(word)) {
+            Set<String> words = trigrams.get(gram);
+            if (words == null) {
+                words = new HashSet<>();
+                trigrams.put(gram, words);
+            }
+            words.add(word);
+        }
+    }
+
+    private void removeTrigrams(String word) {
+        for (String gram : trigramsOf(word)) {
+            Set<String> words = trigrams.get(gram);
+            if (words != null) {
+                words.remove(word);
+                if (words.isEmpty()) {
+                    trigrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the trigrams of a word, starting with "$" and its first two
+     * letters so that words with the same start share more of them.
+     */
+    private static List<String> trigramsOf(String word) {
+        String padded = "$" + word;
+        List<String> grams = new ArrayList<>(Math.max(1, padded.length() - GRAM + 1));
+        if (padded.length() < GRAM) {
+            grams.add(padded);
+            return grams;
+        }
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /**
+     * Splits text into lower case words without accents or apostrophes.
+     */
+    private static void addWords(Collection<String> words, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        String plain = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i <= plain.length(); i++) {
+            char c = i < plain.length() ? plain.charAt(i) : ' ';
+
+            if (Character.getType(c) == Character.NON_SPACING_MARK || c == '\'') {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            }
+            else if (word.length() > 0) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+    }
+
+    private static Set<Movie> copyOf(Set<Movie> movies) {
+        Set<Movie> copy = Collections.newSetFromMap(
+                new IdentityHashMap<Movie, Boolean>(movies.size() * 2));
+        copy.addAll(movies);
+        return copy;
+    }
+
+}
@@ -0,0 +1,74 @@
+import com.omertron.themoviedbapi.MovieDbException;
+import com.omertron.themoviedbapi.model.MovieDb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Passes requests on to another provider and records every response and
+ * image to a directory, so that they can be played back later by a
+ * {@link ReplayMetadataProvider} without the network.
+ *
+ * Responses are kept in a {@link MovieDbCache} and images in a
+ * {@link DiskCache}, neither with a size limit.
+ */
+public class RecordingMetadataProvider implements MetadataProvider {
+
+    private final MetadataProvider provider;
+    private final MovieDbCache responses;
+    private final DiskCache images;
+
+    /**
+     * @param provider The provider to record.
+     * @param directory The directory to record to. Anything already recorded
+     * there is kept.
+     */
+    public RecordingMetadataProvider(MetadataProvider provider, File directory) {
+        this.provider = provider;
+        this.responses = openResponses(directory);
+        this.images = openImages(directory);
+    }
+
+    @Override
+    public List<MovieDb> searchMovie(String title, int year) throws MovieDbException {
+        List<MovieDb> results = provider.searchMovie(title, year);
+
+        // A rate limited search looks like an empty one, and must not be kept.
+        if (TmdbHttpClient.getLastStatus() != TmdbHttpClient.STATUS_TOO_MANY_REQUESTS) {
+            responses.putSearch(title, year, results);
+        }
+        return results;
+    }
+
+    @Override
+    public MovieDb getMovieInfo(int movieId, FetchProfile profile) throws MovieDbException {
+        MovieDb movieDb = provider.getMovieInfo(movieId, profile);
+        if (movieDb != null
+                && TmdbHttpClient.getLastStatus() != TmdbHttpClient.STATUS_TOO_MANY_REQUESTS) {
+            responses.putMovie(movieId, profile, movieDb);
+        }
+        return movieDb;
+    }
+
+    @Override
+    public byte[] getImage(String path, String size) throws IOException {
+        byte[] data = provider.getImage(path, size);
+        images.write(imageName(path, size), data);
+        return data;
+    }
+
+    static MovieDbCache openResponses(File directory) {
+        return new MovieDbCache(new File(directory, "responses"), Long.MAX_VALUE);
+    }
+
+    static DiskCache openImages(File directory) {
+        return new DiskCache(new File(directory, "images"), Long.MAX_VALUE);
+    }
+
+    static String imageName(String path, String size) {
+        // Paths look like "/abc123.jpg".
+        return size + "_" + path.replace('/', '_').replaceFirst("^_", "");
+    }
+
+}
@@ -0,0 +1,633 @@
+import com.omertron.themoviedbapi.model.MovieDb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a movie file name in the style used by scene and other
+ * releases, such as "The.Thing.1982.REMASTERED.1080p.BluRay.x264-GROUP.mkv":
+ * the title, year, resolution, source, edition, part number and any tags in
+ * brackets.
+ *
+ * The name is read in a single pass, word by word, without regular
+ * expressions or splitting. The title is the words up to the first year or
+ * the first word that only ever describes a release, such as "1080p" or
+ * "x264". Words that are also ordinary words, such as "Web" or "Limited",
+ * describe the release only once the title has ended, so
+ * "Charlottes.Web.2006.WEB.mkv" is titled "Charlottes Web" and has the
+ * source "WEB". The first word is always part of the title, as in
+ * "Cam.2018.mkv". A year does not end the title if it is the first word, as
+ * in "2001 A Space Odyssey", or is followed by another year, as in
+ * "Class of 1984 1982".
+ */
+public final class ReleaseName {
+
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = Calendar.getInstance().get(Calendar.YEAR) + 1;
+
+    /** Words describing a release, with the value each stands for. */
+    private static final String[][] RESOLUTIONS = {
+            {"2160p", "2160p"}, {"4k", "2160p"}, {"uhd", "2160p"}, {"1080p", "1080p"},
+            {"1080i", "1080i"}, {"720p", "720p"}, {"576p", "576p"}, {"480p", "480p"}};
+    private static final String[][] SOURCES = {
+            {"bluray", "BluRay"}, {"blu-ray", "BluRay"}, {"blu", "BluRay"}, {"bdrip", "BluRay"},
+            {"brrip", "BluRay"}, {"remux", "BluRay"}, {"web-dl", "WEB"}, {"webdl", "WEB"},
+            {"webrip", "WEB"}, {"web", "WEB"}, {"hdtv", "HDTV"}, {"dvdrip", "DVD"},
+            {"dvdscr", "DVD"}, {"dvd", "DVD"}, {"hdrip", "HDRip"}, {"cam", "CAM"},
+            {"hdcam", "CAM"}, {"telesync", "TS"}};
+    private static final String[][] EDITIONS = {
+            {"extended", "Extended"}, {"unrated", "Unrated"}, {"uncut", "Uncut"},
+            {"remastered", "Remastered"}, {"theatrical", "Theatrical"},
+            {"directors", "Director's Cut"}, {"director's", "Director's Cut"},
+            {"dc", "Director's Cut"}, {"criterion", "Criterion"}, {"imax", "IMAX"}};
+    private static final String[] OTHER_MARKERS = {
+            "x264", "x265", "h264", "h265", "hevc", "avc", "xvid", "divx", "10bit",
+            "hdr", "hdr10", "aac", "ac3", "dts", "atmos", "truehd", "proper", "repack",
+            "limited", "internal", "multi", "dual", "subbed", "dubbed"};
+    /** Words above that are also ordinary words, so can be part of a title. */
+    private static final String[] AMBIGUOUS_WORDS = {
+            "web", "cam", "extended", "unrated", "uncut", "remastered", "theatrical",
+            "directors", "director's", "dc", "criterion", "imax", "proper", "repack",
+            "limited", "internal", "multi", "dual", "subbed", "dubbed"};
+    /** Each of the words above, indexed by length, so a word is only compared with words it could be. */
+    private static final ReleaseWord[][] RELEASE_WORDS = indexReleaseWords();
+
+    /** Words numbering the parts of a movie split across files. */
+    private static final String[] DISC_WORDS = {"cd", "disc", "disk"};
+    private static final String[] PART_WORDS = {"part", "pt"};
+
+    private static final int RESOLUTION = 0;
+    private static final int SOURCE = 1;
+    private static final int EDITION = 2;
+    private static final int OTHER = 3;
+
+    private final String title;
+    private final int year;
+    private final String resolution;
+    private final String source;
+    private final String edition;
+    private final int part;
+    private final List<String> tags;
+
+    private ReleaseName(String title, int year, String resolution, String source,
+                        String edition, int part, List<String> tags) {
+        this.title = title;
+        this.year = year;
+        this.resolution = resolution;
+        this.source = source;
+        this.edition = edition;
+        this.part = part;
+        this.tags = tags;
+    }
+
+    /**
+     * Reads a file name.
+     * @param name The name to read. A movie file extension is ignored.
+     * @return The parts of the name.
+     */
+    public static ReleaseName parse(String name) {
+        return new Parser(name).parse();
+    }
+
+    /**
+     * Takes a title typed by the user, or stored with a movie, as it is,
+     * without looking for a year or release details in it.
+     * @param title The title.
+     * @return A name with the title and nothing else.
+     */
+    public static ReleaseName typed(String title) {
+        return new ReleaseName(title.trim(), 0, null, null, null, 0, Collections.<String>emptyList());
+    }
+
+    /** @return The title, with words separated by single spaces. */
+    public String getTitle() {
+        return title;
+    }
+
+    /** @return The release year, or 0 if the name has none. */
+    public int getYear() {
+        return year;
+    }
+
+    /** @return The resolution, such as "1080p", or null. */
+    public String getResolution() {
+        return resolution;
+    }
+
+    /** @return The source, such as "BluRay", or null. */
+    public String getSource() {
+        return source;
+    }
+
+    /** @return The edition, such as "Extended", or null. */
+    public String getEdition() {
+        return edition;
+    }
+
+    /** @return The part number of a movie split across files, or 0. */
+    public int getPart() {
+        return part;
+    }
+
+    /** @return The text of each bracketed tag, such as a release group. */
+    public List<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Picks the search result that best matches this name. Results are
+     * scored on how closely their title matches, how close their release
+     * year is, and how many votes they have, with TheMovieDb's own order
+     * breaking ties.
+     * @param candidates The search results.
+     * @return The best result, or null if there are none.
+     */
+    public MovieDb bestMatch(List<MovieDb> candidates) {
+        String wanted = normaliseTitle(title);
+        MovieDb best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (int rank = 0; rank < candidates.size(); rank++) {
+            MovieDb candidate = candidates.get(rank);
+            double score = score(candidate, wanted) - rank * 0.1;
+
+            if (score > bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+
+    private double score(MovieDb candidate, String wanted) {
+        double score = 0;
+
+        String candidateTitle = normaliseTitle(candidate.getTitle());
+        String originalTitle = normaliseTitle(candidate.getOriginalTitle());
+        if (wanted.equals(candidateTitle) || wanted.equals(originalTitle)) {
+            score += 4;
+        }
+        else if (!wanted.isEmpty() && !candidateTitle.isEmpty()
+                && (candidateTitle.contains(wanted) || wanted.contains(candidateTitle))) {
+            score += 1;
+        }
+
+        int candidateYear = Movie.parseYear(candidate.getReleaseDate());
+        if (year > 0 && candidateYear > 0) {
+            // Festival and release dates often fall in neighbouring years.
+            int difference = Math.abs(year - candidateYear);
+            score += difference == 0 ? 3 : difference == 1 ? 1.5 : -1;
+        }
+
+        // Prefer a well known film to an obscure one of the same name.
+        score += Math.log10(1 + candidate.getVoteCount()) * 0.25;
+        return score;
+    }
+
+    /**
+     * Reduces a title to lower case letters and digits separated by single
+     * spaces, without a leading article, for comparing titles.
+     */
+    static String normaliseTitle(String title) {
+        if (title == null) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder(title.length());
+        boolean space = false;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(Character.toLowerCase(c));
+                space = false;
+            }
+            else if (c != '\'') {
+                space = true;
+            }
+        }
+
+        String normalised = builder.toString();
+        for (String article : Movie.LEADING_ARTICLES) {
+            if (normalised.startsWith(article)) {
+                return normalised.substring(article.length());
+            }
+        }
+        return normalised;
+    }
+
+    @Override
+    public String toString() {
+        return year > 0 ? title + " (" + year + ")" : title;
+    }
+
+    private static ReleaseWord[][] indexReleaseWords() {
+        List<ReleaseWord> words = new ArrayList<>();
+        for (String[] entry : RESOLUTIONS) {
+            words.add(new ReleaseWord(entry[0], RESOLUTION, entry[1]));
+        }
+        for (String[] entry : SOURCES) {
+            words.add(new ReleaseWord(entry[0], SOURCE, entry[1]));
+        }
+        for (String[] entry : EDITIONS) {
+            words.add(new ReleaseWord(entry[0], EDITION, entry[1]));
+        }
+        for (String word : OTHER_MARKERS) {
+            words.add(new ReleaseWord(word, OTHER, null));
+        }
+
+        int longest = 0;
+        for (ReleaseWord word : words) {
+            longest = Math.max(longest, word.word.length());
+        }
+
+        ReleaseWord[][] index = new ReleaseWord[longest + 1][];
+        for (int length = 0; length <= longest; length++) {
+            List<ReleaseWord> sameLength = new ArrayList<>();
+            for (ReleaseWord word : words) {
+                if (word.word.length() == length) {
+                    sameLength.add(word);
+                }
+            }
+            index[length] = sameLength.toArray(new ReleaseWord[sameLength.size()]);
+        }
+        return index;
+    }
+
+    /**
+     * A word describing a release, and what it stands for.
+     */
+    private static final class ReleaseWord {
+
+        private final String word;
+        private final int kind;
+        private final String value;
+        private final boolean ambiguous;
+
+        private ReleaseWord(String word, int kind, String value) {
+            this.word = word;
+            this.kind = kind;
+            this.value = value;
+            ambiguous = Arrays.asList(AMBIGUOUS_WORDS).contains(word);
+        }
+    }
+
+    /**
+     * Reads one name. The words are not copied out of the name; only their
+     * positions are kept until the title is known.
+     */
+    private static final class Parser {
+
+        private final String name;
+        private final int length;
+
+        /** The start and end of each title word. */
+        private int[] titleWords = new int[16];
+        private int titleWordCount;
+        private boolean titleOpen = true;
+
+        /** A year that ends the title, unless another year follows it. */
+        private int pendingYear;
+        private int pendingStart;
+        private int pendingEnd;
+        /** Whether the last word was "CD", "Part" and so on, awaiting a number. */
+        private boolean partWord;
+
+        private int year;
+        private String resolution;
+        private String source;
+        private String edition;
+        private int part;
+        private List<String> tags = Collections.emptyList();
+
+        private Parser(String name) {
+            this.name = name;
+            // Only the file extension is dropped, not other dotted words.
+            this.length = MovieFileWalker.isMovieFile(name) ? name.lastIndexOf('.') : name.length();
+        }
+
+        private ReleaseName parse() {
+            int start = -1;
+
+            for (int i = 0; i < length; i++) {
+                char c = name.charAt(i);
+
+                char close = closingBracket(c);
+                if (close != 0) {
+                    int end = name.indexOf(close, i + 1);
+                    if (end > 0 && end < length) {
+                        if (start >= 0) {
+                            word(start, i);
+                            start = -1;
+                        }
+                        bracket(i + 1, end);
+                        i = end;
+                        continue;
+                    }
+                }
+
+                if (isSeparator(c, i, start)) {
+                    if (start >= 0) {
+                        word(start, i);
+                        start = -1;
+                    }
+                }
+                else if (start < 0) {
+                    start = i;
+                }
+            }
+
+            if (start >= 0) {
+                word(start, length);
+            }
+            if (pendingYear != 0) {
+                year = pendingYear;
+            }
+
+            return new ReleaseName(buildTitle(), year, resolution, source, edition, part, tags);
+        }
+
+        private boolean isSeparator(char c, int i, int start) {
+            switch (c) {
+                case '.': case '_': case ' ': case '+':
+                case '(': case ')': case '[': case ']': case '{': case '}':
+                    return true;
+                default:
+                    break;
+            }
+            if (c != '-') {
+                return false;
+            }
+
+            // Hyphens join words in a title, as in "Spider-Man", but separate
+            // the release details, as in "2010-GROUP", and a dash set apart by spaces.
+            return !titleOpen || pendingYear != 0
+                    || i == 0 || i == length - 1
+                    || name.charAt(i - 1) == ' ' || name.charAt(i + 1) == ' '
+                    || (start >= 0 && (parseYear(start, i) != 0
+                        || endsTitle(start, i)));
+        }
+
+        private void word(int start, int end) {
+            int wordYear = parseYear(start, end);
+
+            if (pendingYear != 0) {
+                if (wordYear != 0) {
+                    // The earlier year was part of the title after all.
+                    addTitleWord(pendingStart, pendingEnd);
+                    setPendingYear(wordYear, start, end);
+                    return;
+                }
+                closeTitle();
+            }
+
+            if (titleOpen) {
+                if (wordYear != 0 && titleWordCount > 0) {
+                    setPendingYear(wordYear, start, end);
+                    return;
+                }
+                if (!endsTitle(start, end)) {
+                    addTitleWord(start, end);
+                    return;
+                }
+                titleOpen = false;
+            }
+
+            releaseWord(start, end, wordYear);
+        }
+
+        private void bracket(int start, int end) {
+            // Trim the contents.
+            while (start < end && name.charAt(start) == ' ') {
+                start++;
+            }
+            while (end > start && name.charAt(end - 1) == ' ') {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+
+            int bracketYear = parseYear(start, end);
+            if (bracketYear != 0) {
+                // A bracketed year is the year, and anything before it the title.
+                if (pendingYear != 0) {
+                    addTitleWord(pendingStart, pendingEnd);
+                    pendingYear = 0;
+                }
+                year = bracketYear;
+                titleOpen = false;
+                return;
+            }
+
+            if (pendingYear != 0) {
+                closeTitle();
+            }
+            if (titleWordCount > 0) {
+                titleOpen = false;
+            }
+
+            // A single word such as "[1080p]" is read like any other.
+            if (isReleaseWord(start, end)) {
+                releaseWord(start, end, 0);
+                return;
+            }
+
+            if (tags.isEmpty()) {
+                tags = new ArrayList<>(2);
+            }
+            tags.add(name.substring(start, end));
+        }
+
+        /**
+         * Records a word that comes after the title.
+         */
+        private void releaseWord(int start, int end, int wordYear) {
+            if (partWord) {
+                partWord = false;
+                int number = parseNumber(start, end);
+                if (number > 0) {
+                    part = number;
+                    return;
+                }
+            }
+
+            ReleaseWord releaseWord = findReleaseWord(start, end);
+            if (releaseWord != null) {
+                if (releaseWord.kind == RESOLUTION && resolution == null) {
+                    resolution = releaseWord.value;
+                }
+                else if (releaseWord.kind == SOURCE && source == null) {
+                    source = releaseWord.value;
+                }
+                else if (releaseWord.kind == EDITION && edition == null) {
+                    edition = releaseWord.value;
+                }
+            }
+            else if (wordYear != 0) {
+                if (year == 0) {
+                    year = wordYear;
+                }
+            }
+            else {
+                int number = partNumber(DISC_WORDS, start, end);
+                if (number < 0) {
+                    number = partNumber(PART_WORDS, start, end);
+                }
+
+                if (number == 0) {
+                    partWord = true;
+                }
+                else if (number > 0) {
+                    part = number;
+                }
+            }
+        }
+
+        /**
+         * Checks whether a word ends the title: a word that only ever describes
+         * a release, after the first word. An ordinary word such as "Web"
+         * stays in the title, as in "Charlotte's Web".
+         */
+        private boolean endsTitle(int start, int end) {
+            if (titleWordCount == 0) {
+                return false;
+            }
+            ReleaseWord releaseWord = findReleaseWord(start, end);
+            if (releaseWord != null) {
+                return !releaseWord.ambiguous;
+            }
+            return partNumber(DISC_WORDS, start, end) >= 0;
+        }
+
+        private boolean isReleaseWord(int start, int end) {
+            return findReleaseWord(start, end) != null
+                    // "Part 2" may be part of the title, but "CD2" never is.
+                    || partNumber(DISC_WORDS, start, end) >= 0;
+        }
+
+        /**
+         * Reads the part number of a word such as "CD2" or "Part3".
+         * @return The number, 0 for a word such as "CD" whose number follows,
+         * or -1 if the word does not number a part.
+         */
+        private int partNumber(String[] words, int start, int end) {
+            for (String word : words) {
+                int wordEnd = start + word.length();
+                if (wordEnd > end || !name.regionMatches(true, start, word, 0, word.length())) {
+                    continue;
+                }
+
+                if (wordEnd == end) {
+                    return 0;
+                }
+
+                int number = parseNumber(wordEnd, end);
+                if (number > 0) {
+                    return number;
+                }
+            }
+            return -1;
+        }
+
+        private void setPendingYear(int wordYear, int start, int end) {
+            pendingYear = wordYear;
+            pendingStart = start;
+            pendingEnd = end;
+        }
+
+        private void closeTitle() {
+            year = pendingYear;
+            pendingYear = 0;
+            titleOpen = false;
+        }
+
+        private void addTitleWord(int start, int end) {
+            if (titleWordCount * 2 == titleWords.length) {
+                int[] grown = new int[titleWords.length * 2];
+                System.arraycopy(titleWords, 0, grown, 0, titleWords.length);
+                titleWords = grown;
+            }
+            titleWords[titleWordCount * 2] = start;
+            titleWords[titleWordCount * 2 + 1] = end;
+            titleWordCount++;
+        }
+
+        private String buildTitle() {
+            if (titleWordCount == 0) {
+                // Nothing but release details, so search for the whole name.
+                return name.substring(0, length).trim();
+            }
+
+            StringBuilder builder = new StringBuilder(length);
+            for (int i = 0; i < titleWordCount; i++) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(name, titleWords[i * 2], titleWords[i * 2 + 1]);
+            }
+            return builder.toString();
+        }
+
+        private int parseYear(int start, int end) {
+            if (end - start != 4) {
+                return 0;
+            }
+            int number = parseNumber(start, end);
+            return number >= FIRST_YEAR && number <= LAST_YEAR ? number : 0;
+        }
+
+        /**
+         * @return The number the characters spell, or -1 if they are not all digits.
+         */
+        private int parseNumber(int start, int end) {
+            if (start == end || end - start > 4) {
+                return -1;
+            }
+
+            int number = 0;
+            for (int i = start; i < end; i++) {
+                char c = name.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                number = number * 10 + (c - '0');
+            }
+            return number;
+        }
+
+        private ReleaseWord findReleaseWord(int start, int end) {
+            int wordLength = end - start;
+            if (wordLength >= RELEASE_WORDS.length) {
+                return null;
+            }
+
+            for (ReleaseWord releaseWord : RELEASE_WORDS[wordLength]) {
+                if (name.regionMatches(true, start, releaseWord.word, 0, wordLength)) {
+                    return releaseWord;
+                }
+            }
+            return null;
+        }
+
+        private static char closingBracket(char c) {
+            switch (c) {
+                case '[':
+                    return ']';
+                case '(':
+                    return ')';
+                case '{':
+                    return '}';
+                default:
+                    return 0;
+            }
+        }
+    }
+
+}
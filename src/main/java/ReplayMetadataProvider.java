@@ -0,0 +1,114 @@
+import com.omertron.themoviedbapi.MovieDbException;
+import com.omertron.themoviedbapi.model.MovieDb;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Plays back the responses and images recorded by a
+ * {@link RecordingMetadataProvider}, or written by {@link SyntheticLibrary},
+ * without the network. Searches that were not recorded find nothing.
+ *
+ * To load test the rest of the movie manager under realistic conditions,
+ * each request can be made to take time, and a share of requests can be
+ * rate limited the way TheMovieDb does it, with a 429 status.
+ */
+public class ReplayMetadataProvider implements MetadataProvider {
+
+    private static final int STATUS_OK = 200;
+
+    private final MovieDbCache responses;
+    private final DiskCache images;
+    private final long latencyMs;
+    private final double throttledShare;
+
+    /**
+     * Creates a provider that answers straight away and is never rate limited.
+     * @param directory The directory the responses were recorded to.
+     */
+    public ReplayMetadataProvider(File directory) {
+        this(directory, 0, 0);
+    }
+
+    /**
+     * @param directory The directory the responses were recorded to.
+     * @param latencyMs The average time each request takes. Individual
+     * requests take between half and one and a half times as long.
+     * @param throttledShare The share of searches and movie information
+     * requests, from 0 to 1, that are rate limited.
+     */
+    public ReplayMetadataProvider(File directory, long latencyMs, double throttledShare) {
+        this.responses = RecordingMetadataProvider.openResponses(directory);
+        this.images = RecordingMetadataProvider.openImages(directory);
+        this.latencyMs = latencyMs;
+        this.throttledShare = throttledShare;
+    }
+
+    @Override
+    public List<MovieDb> searchMovie(String title, int year) throws MovieDbException {
+        if (!respond(true)) {
+            return Collections.emptyList();
+        }
+
+        List<MovieDb> results = responses.getSearch(title, year, true);
+        return results != null ? results : Collections.<MovieDb>emptyList();
+    }
+
+    @Override
+    public MovieDb getMovieInfo(int movieId, FetchProfile profile) throws MovieDbException {
+        if (!respond(true)) {
+            return null;
+        }
+
+        MovieDb movieDb = responses.getMovie(movieId, profile, true);
+        if (movieDb == null) {
+            throw new MovieDbException(MovieDbException.MovieDbExceptionType.MOVIE_ID_NOT_FOUND,
+                    "No recorded information for movie " + movieId);
+        }
+        return movieDb;
+    }
+
+    @Override
+    public byte[] getImage(String path, String size) throws IOException {
+        // Images come from a separate server, which is not rate limited.
+        respond(false);
+
+        byte[] data = images.read(RecordingMetadataProvider.imageName(path, size));
+        if (data == null) {
+            throw new FileNotFoundException("No recorded image " + path);
+        }
+        return data;
+    }
+
+    /**
+     * Waits as long as a request would take, and records the status it
+     * would have been answered with.
+     * @param mayThrottle Whether the request may be rate limited.
+     * @return False if the request was rate limited.
+     */
+    private boolean respond(boolean mayThrottle) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs / 2 + (long) (random.nextDouble() * latencyMs));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (mayThrottle && random.nextDouble() < throttledShare) {
+            TmdbHttpClient.setLastResponse(TmdbHttpClient.STATUS_TOO_MANY_REQUESTS, 0);
+            return false;
+        }
+
+        TmdbHttpClient.setLastResponse(STATUS_OK, 0);
+        return true;
+    }
+
+}
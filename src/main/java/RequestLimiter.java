@@ -0,0 +1,243 @@
+import com.omertron.themoviedbapi.MovieDbException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Limits the requests made to TheMovieDb, adapting to how the server is
+ * coping. Both the number of requests in flight and the rate of request
+ * starts are adjusted: each quick success raises them a little, while a rate
+ * limited response halves them and a slow response trims the number in
+ * flight. Only the first bad response of a burst counts, since the requests
+ * in flight alongside it were sent at the same, already reduced, rate.
+ *
+ * Requests that are rate limited or fail to connect are retried with an
+ * increasing, randomised delay, honouring any wait the server asks for.
+ */
+public class RequestLimiter {
+
+    /**
+     * A request to TheMovieDb.
+     */
+    public interface Request<T> {
+        T execute() throws MovieDbException;
+    }
+
+    private static final double MIN_LIMIT = 1;
+    private static final double MAX_LIMIT = 16;
+    private static final double INITIAL_LIMIT = 4;
+    private static final double SLOW_DECREASE = 0.8;
+
+    /** Request starts per second. */
+    private static final double MIN_RATE = 0.2;
+    private static final double MAX_RATE = 100;
+    private static final double INITIAL_RATE = 10;
+    private static final double RATE_STEP = 0.25;
+
+    private static final long TARGET_LATENCY_NS = TimeUnit.MILLISECONDS.toNanos(1500);
+
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private static final Metrics.Timer REQUEST_TIMER = MovieManager.METRICS.timer("tmdb.request");
+    private static final Metrics.Counter THROTTLED = MovieManager.METRICS.counter("tmdb.throttled");
+    private static final Metrics.Counter RETRIES = MovieManager.METRICS.counter("tmdb.retries");
+
+    private final Random random = new Random();
+
+    private double limit = INITIAL_LIMIT;
+    private double rate = INITIAL_RATE;
+    private int inFlight;
+    private int waiting;
+    private long nextStart = System.nanoTime();
+    private long pausedUntil = System.nanoTime();
+    private long lastDecrease = System.nanoTime();
+
+    /**
+     * Makes a request once the limits allow it, retrying it if it is rate
+     * limited or cannot connect.
+     * @param description What the request is for, used when logging.
+     * @param request The request to make.
+     * @return The result of the request.
+     * @throws MovieDbException If the request failed for any other reason, or
+     * still failed after retrying.
+     */
+    public <T> T call(String description, Request<T> request) throws MovieDbException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MovieDbException(MovieDbException.MovieDbExceptionType.CONNECTION_ERROR,
+                        "Interrupted while waiting to request " + description, e);
+            }
+
+            TmdbHttpClient.clearLastResponse();
+            long start = System.nanoTime();
+            T result = null;
+            MovieDbException failure = null;
+            int status;
+            long retryAfterMs;
+            boolean throttled;
+
+            try {
+                result = request.execute();
+            }
+            catch (MovieDbException e) {
+                failure = e;
+            }
+            catch (RuntimeException e) {
+                // A bug in the provider or the library: fail this request
+                // like any other rather than losing its slot.
+                failure = new MovieDbException(MovieDbException.MovieDbExceptionType.UNKNOWN_CAUSE,
+                        "Unexpected failure of " + description, e);
+            }
+            finally {
+                // Always give the slot back, whatever went wrong.
+                long latency = System.nanoTime() - start;
+                REQUEST_TIMER.record(latency);
+                status = TmdbHttpClient.getLastStatus();
+                retryAfterMs = TmdbHttpClient.getLastRetryAfterMs();
+
+                throttled = status == TmdbHttpClient.STATUS_TOO_MANY_REQUESTS
+                        || status == 503
+                        || (failure != null && failure.getExceptionType()
+                            == MovieDbException.MovieDbExceptionType.HTTP_503_ERROR);
+
+                release(throttled, start, latency, retryAfterMs);
+            }
+
+            boolean retry = throttled || status >= 500
+                    || (failure != null && failure.getExceptionType()
+                        == MovieDbException.MovieDbExceptionType.CONNECTION_ERROR);
+            if (throttled) {
+                THROTTLED.increment();
+            }
+
+            if (!retry) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return result;
+            }
+
+            if (attempt == MAX_ATTEMPTS) {
+                if (failure != null) {
+                    throw failure;
+                }
+                throw new MovieDbException(MovieDbException.MovieDbExceptionType.HTTP_503_ERROR,
+                        "Gave up on " + description + " after " + attempt + " attempts");
+            }
+
+            RETRIES.increment();
+            long backoffMs = Math.max(retryAfterMs, backoff(attempt));
+            if (MovieManager.LOGGER.isLoggable(Level.INFO)) {
+                MovieManager.LOGGER.log(Level.INFO, "Retrying " + description + " in "
+                        + backoffMs + "ms (status " + status + ")");
+            }
+
+            try {
+                Thread.sleep(backoffMs);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MovieDbException(MovieDbException.MovieDbExceptionType.CONNECTION_ERROR,
+                        "Interrupted while retrying " + description, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the current number of requests allowed in flight.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of requests in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of requests waiting for the limits to allow them.
+     */
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Returns the current number of request starts allowed per second.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private synchronized void acquire() throws InterruptedException {
+        waiting++;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long wait = Math.max(nextStart, pausedUntil) - now;
+
+                if (inFlight < (int) limit && wait <= 0) {
+                    inFlight++;
+                    nextStart = now + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+                    return;
+                }
+
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, wait);
+                }
+                else {
+                    wait();
+                }
+            }
+        }
+        finally {
+            waiting--;
+        }
+    }
+
+    private synchronized void release(boolean throttled, long start, long latency,
+                                      long retryAfterMs) {
+        inFlight--;
+        long now = System.nanoTime();
+        boolean newBurst = start > lastDecrease;
+
+        if (throttled) {
+            if (newBurst) {
+                limit = Math.max(MIN_LIMIT, limit / 2);
+                rate = Math.max(MIN_RATE, rate / 2);
+                lastDecrease = now;
+            }
+            if (retryAfterMs > 0) {
+                pausedUntil = Math.max(pausedUntil,
+                        now + TimeUnit.MILLISECONDS.toNanos(retryAfterMs));
+            }
+        }
+        else if (latency > TARGET_LATENCY_NS) {
+            if (newBurst) {
+                limit = Math.max(MIN_LIMIT, limit * SLOW_DECREASE);
+                lastDecrease = now;
+            }
+        }
+        else {
+            limit = Math.min(MAX_LIMIT, limit + 1 / limit);
+            rate = Math.min(MAX_RATE, rate + RATE_STEP);
+        }
+
+        notifyAll();
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (attempt - 1));
+        return ceiling / 2 + (long) (random.nextDouble() * ceiling / 2);
+    }
+
+}
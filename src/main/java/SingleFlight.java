@@ -0,0 +1,51 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent calls for the same key, so that while a call is in
+ * progress, other callers asking for the same key wait for its result rather
+ * than making the call again. Nothing is kept once the call completes.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Makes a call, or waits for the result of the same call already in progress.
+     * @param key The key identifying the call.
+     * @param call The call to make if none is in progress.
+     * @return The result of the call, or null if interrupted while waiting.
+     */
+    public V execute(K key, Callable<V> call) {
+        FutureTask<V> task = new FutureTask<>(call);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+
+        if (existing == null) {
+            try {
+                task.run();
+            }
+            finally {
+                inFlight.remove(key, task);
+            }
+            existing = task;
+        }
+
+        try {
+            return existing.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+import java.util.Comparator;
+
+/**
+ * The orders the movie list can be shown in. Every order falls back to the
+ * title order for movies that are otherwise equal, so that each gives movies
+ * a single, stable position.
+ */
+public enum SortOrder {
+
+    /** By title, ignoring case and leading articles. */
+    TITLE("Title") {
+        @Override
+        protected int compareFirst(Movie a, Movie b) {
+            return 0;
+        }
+    },
+
+    /** Newest first. */
+    YEAR("Year") {
+        @Override
+        protected int compareFirst(Movie a, Movie b) {
+            return Integer.compare(b.getReleaseYear(), a.getReleaseYear());
+        }
+    },
+
+    /** Highest rated first. */
+    RATING("Rating") {
+        @Override
+        protected int compareFirst(Movie a, Movie b) {
+            return Float.compare(b.getRating(), a.getRating());
+        }
+    },
+
+    /** Most recently added first. */
+    DATE_ADDED("Date added") {
+        @Override
+        protected int compareFirst(Movie a, Movie b) {
+            return Long.compare(b.getDateAdded(), a.getDateAdded());
+        }
+    };
+
+    private final String displayName;
+    private final Comparator<Movie> comparator = new Comparator<Movie>() {
+        @Override
+        public int compare(Movie a, Movie b) {
+            int result = compareFirst(a, b);
+            return result != 0 ? result : compareTitles(a, b);
+        }
+    };
+
+    SortOrder(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Returns a comparator putting movies in this order.
+     * @return The comparator.
+     */
+    public Comparator<Movie> getComparator() {
+        return comparator;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    /**
+     * Compares two movies by what this order is mainly for.
+     */
+    protected abstract int compareFirst(Movie a, Movie b);
+
+    private static int compareTitles(Movie a, Movie b) {
+        int result = a.getSortKey().compareTo(b.getSortKey());
+        if (result == 0) {
+            result = Integer.compare(a.getReleaseYear(), b.getReleaseYear());
+        }
+        if (result == 0) {
+            result = Integer.compare(a.getMovieId(), b.getMovieId());
+        }
+        return result;
+    }
+
+}
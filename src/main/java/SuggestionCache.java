@@ -0,0 +1,114 @@
+import com.omertron.themoviedbapi.model.MovieDb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The search results of the queries searched most recently, for suggesting
+ * movies as the user types a title. A query that has not been searched yet
+ * can be answered at once from the results of a shorter query it starts
+ * with, narrowed to the titles that still match, while its own search is
+ * made.
+ */
+public class SuggestionCache {
+
+    public static final int DEFAULT_MAX_QUERIES = 64;
+
+    private final int maxQueries;
+
+    /** Search results by normalised query, least recently used first. */
+    private final LinkedHashMap<String, List<MovieDb>> results =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxQueries The number of queries to keep the results of.
+     */
+    public SuggestionCache(int maxQueries) {
+        this.maxQueries = maxQueries;
+    }
+
+    /**
+     * Returns the search results for a query, if it has been searched.
+     * @param query The query as typed.
+     * @return The results, or null if the query has not been searched.
+     */
+    public synchronized List<MovieDb> get(String query) {
+        return results.get(MovieDbCache.normaliseQuery(query));
+    }
+
+    /**
+     * Returns the search results for a query, or failing that the results of
+     * the longest query it starts with that has been searched, narrowed to the
+     * titles that match the whole query.
+     * @param query The query as typed.
+     * @return The results, or null if neither the query nor any query it
+     * starts with has been searched.
+     */
+    public synchronized List<MovieDb> getNearest(String query) {
+        String normalised = MovieDbCache.normaliseQuery(query);
+
+        for (int length = normalised.length(); length > 0; length--) {
+            List<MovieDb> found = results.get(normalised.substring(0, length));
+            if (found == null) {
+                continue;
+            }
+            if (length == normalised.length()) {
+                return found;
+            }
+
+            String[] queryWords = normalised.split(" ");
+            List<MovieDb> narrowed = new ArrayList<>(found.size());
+            for (MovieDb movieDb : found) {
+                if (matches(movieDb.getTitle(), queryWords)) {
+                    narrowed.add(movieDb);
+                }
+            }
+            return narrowed;
+        }
+
+        return null;
+    }
+
+    /**
+     * Keeps the search results for a query, forgetting the least recently used
+     * query if there are too many.
+     * @param query The query as typed.
+     * @param found The search results.
+     */
+    public synchronized void put(String query, List<MovieDb> found) {
+        results.put(MovieDbCache.normaliseQuery(query), found);
+
+        Iterator<List<MovieDb>> iterator = results.values().iterator();
+        while (results.size() > maxQueries) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns whether every query word is the start of a word of a title.
+     */
+    private static boolean matches(String title, String[] queryWords) {
+        if (title == null) {
+            return false;
+        }
+
+        String[] titleWords = MovieDbCache.normaliseQuery(title).split(" ");
+        for (String queryWord : queryWords) {
+            boolean found = false;
+            for (String titleWord : titleWords) {
+                if (titleWord.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,319 @@
+import com.omertron.themoviedbapi.model.Genre;
+import com.omertron.themoviedbapi.model.Keyword;
+import com.omertron.themoviedbapi.model.MovieDb;
+import com.omertron.themoviedbapi.model.PersonCast;
+import com.omertron.themoviedbapi.wrapper.WrapperMovieCasts;
+import com.omertron.themoviedbapi.wrapper.WrapperMovieKeywords;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a library of made-up movies for load testing: a folder of movie
+ * files named the way real ones are, and a recording of the TheMovieDb
+ * responses and images for them that a {@link ReplayMetadataProvider} can
+ * play back. Together they allow a whole scan to run without the network.
+ *
+ * The same seed always generates the same library. Movie files only have a
+ * few bytes of their own and are otherwise left empty, which takes no space
+ * on file systems that support sparse files.
+ */
+public final class SyntheticLibrary {
+
+    private static final String[] TITLE_WORDS = {
+            "Dark", "City", "Road", "Night", "Return", "Star", "Love", "War", "Ghost", "King",
+            "Island", "Blue", "Red", "Empire", "Time", "Zero", "Last", "Summer", "Winter",
+            "River", "Storm", "Shadow", "Garden", "Train", "Secret", "Silent", "Wild", "Golden",
+            "Iron", "Glass", "Moon", "Sun", "Ocean", "Desert", "Forest", "Machine", "Dream",
+            "Fire", "Stone", "Heart", "Bridge", "Harbour", "Mountain", "Echo", "Signal",
+    };
+
+    private static final String[] FIRST_NAMES = {
+            "Ada", "Ben", "Clara", "David", "Elena", "Frank", "Grace", "Hugo", "Iris", "Jack",
+            "Kate", "Leo", "Maya", "Noah", "Olive", "Paul", "Rosa", "Sam", "Tara", "Victor",
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Adams", "Brook", "Carter", "Dale", "Evans", "Fox", "Gray", "Hart", "Irving",
+            "Jones", "Keller", "Lane", "Moore", "Nash", "Owens", "Price", "Reed", "Stone",
+    };
+
+    private static final String[] GENRES = {
+            "Action", "Adventure", "Animation", "Comedy", "Crime", "Documentary", "Drama",
+            "Family", "Fantasy", "History", "Horror", "Music", "Mystery", "Romance",
+            "Science Fiction", "Thriller", "War", "Western",
+    };
+
+    private static final String[] RESOLUTIONS = {"720p", "1080p", "2160p"};
+    private static final String[] SOURCES = {"BluRay", "WEB-DL", "DVDRip", "HDTV"};
+    private static final String[] GROUPS = {"GRP", "FGT", "SPARKS", "YIFY", "ETRG"};
+
+    private static final int FIRST_MOVIE_ID = 100000;
+    private static final int FIRST_OTHER_ID = 900000;
+    private static final int IMAGE_COUNT = 16;
+    private static final int MIN_FILE_BYTES = 64;
+
+    private final Random random;
+    private final MovieDbCache responses;
+    private final DiskCache images;
+    private final Set<String> titles = new HashSet<>();
+    private int nextOtherId = FIRST_OTHER_ID;
+
+    private SyntheticLibrary(File recording, long seed) {
+        this.random = new Random(seed);
+        this.responses = RecordingMetadataProvider.openResponses(recording);
+        this.images = RecordingMetadataProvider.openImages(recording);
+    }
+
+    /**
+     * Generates a library.
+     * @param folder The folder to create the movie files in.
+     * @param recording The directory to record the responses and images to.
+     * @param movies The number of movies to generate.
+     * @param fileBytes The size of each movie file.
+     * @param seed The seed for the random choices made.
+     * @throws IOException If a movie file could not be created.
+     */
+    public static void generate(File folder, File recording, int movies, long fileBytes,
+                                long seed) throws IOException {
+        SyntheticLibrary library = new SyntheticLibrary(recording, seed);
+        library.writeImages();
+
+        for (int i = 0; i < movies; i++) {
+            library.writeMovie(folder, FIRST_MOVIE_ID + i, Math.max(MIN_FILE_BYTES, fileBytes));
+        }
+    }
+
+    private void writeMovie(File folder, int movieId, long fileBytes) throws IOException {
+        String title = createTitle();
+        int year = 1930 + random.nextInt(95);
+        MovieDb movieDb = createMovie(movieId, title, year);
+
+        // The decoys a real search turns up: remakes, sequels and other films
+        // sharing words with the title.
+        List<MovieDb> results = new ArrayList<>();
+        results.add(movieDb);
+        int decoys = random.nextInt(5);
+        for (int i = 0; i < decoys; i++) {
+            String decoyTitle = random.nextBoolean() ? title : title + " " + (i + 2);
+            results.add(createMovie(nextOtherId++, decoyTitle, 1930 + random.nextInt(95)));
+        }
+        Collections.shuffle(results, random);
+
+        File movieFolder = random.nextBoolean()
+                ? new File(folder, title + " (" + year + ")")
+                : new File(folder, title.substring(0, 1));
+        if (!movieFolder.isDirectory() && !movieFolder.mkdirs()) {
+            throw new IOException("Could not create " + movieFolder);
+        }
+
+        List<String> fileNames = createFileNames(title, year);
+        for (int part = 0; part < fileNames.size(); part++) {
+            String fileName = fileNames.get(part);
+            writeFile(new File(movieFolder, fileName), movieId * 16L + part, fileBytes);
+
+            // Search for what the movie manager will search for.
+            ReleaseName name = ReleaseName.parse(fileName);
+            responses.putSearch(name.getTitle(), name.getYear(), results);
+            if (name.getYear() > 0) {
+                responses.putSearch(name.getTitle(), 0, results);
+            }
+        }
+
+        if (random.nextInt(4) == 0) {
+            writeFile(new File(movieFolder, title + ".nfo"), movieId, MIN_FILE_BYTES);
+        }
+
+        responses.putMovie(movieId, FetchProfile.LIST, movieDb);
+        addDetail(movieDb);
+        responses.putMovie(movieId, FetchProfile.DETAIL, movieDb);
+        addFull(movieDb);
+        responses.putMovie(movieId, FetchProfile.FULL, movieDb);
+    }
+
+    private String createTitle() {
+        // Titles are unique, so every movie can be told apart by its name.
+        // Longer titles are allowed as the short ones run out.
+        for (int attempt = 0; ; attempt++) {
+            int words = 1 + random.nextInt(3 + attempt / 10);
+            StringBuilder title = new StringBuilder();
+            for (int i = 0; i < words; i++) {
+                if (i > 0) {
+                    title.append(' ');
+                }
+                title.append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+            }
+
+            if (titles.add(title.toString())) {
+                return title.toString();
+            }
+        }
+    }
+
+    private List<String> createFileNames(String title, int year) {
+        String resolution = RESOLUTIONS[random.nextInt(RESOLUTIONS.length)];
+        String source = SOURCES[random.nextInt(SOURCES.length)];
+        String group = GROUPS[random.nextInt(GROUPS.length)];
+        String dotted = title.replace(' ', '.');
+
+        // One movie in twenty is split over two files.
+        if (random.nextInt(20) == 0) {
+            return Arrays.asList(
+                    title + " (" + year + ") CD1.avi",
+                    title + " (" + year + ") CD2.avi");
+        }
+
+        switch (random.nextInt(5)) {
+            case 0:
+                return Collections.singletonList(title + " (" + year + ").mkv");
+            case 1:
+                return Collections.singletonList(title.toLowerCase(Locale.ENGLISH)
+                        .replace(' ', '_') + "_" + year + ".avi");
+            case 2:
+                return Collections.singletonList(title + " " + year + " " + resolution + ".mp4");
+            case 3:
+                return Collections.singletonList(title + ".mkv");
+            default:
+                return Collections.singletonList(dotted + "." + year + "." + resolution + "."
+                        + source + ".x264-" + group + ".mkv");
+        }
+    }
+
+    private MovieDb createMovie(int movieId, String title, int year) {
+        MovieDb movieDb = new MovieDb();
+        movieDb.setId(movieId);
+        movieDb.setTitle(title);
+        movieDb.setOriginalTitle(title);
+        movieDb.setReleaseDate(String.format("%04d-%02d-%02d", year,
+                1 + random.nextInt(12), 1 + random.nextInt(28)));
+        movieDb.setVoteAverage(random.nextInt(100) / 10f);
+        movieDb.setVoteCount(random.nextInt(20000));
+        movieDb.setPopularity(random.nextFloat() * 100);
+        movieDb.setPosterPath(imagePath("poster", random.nextInt(IMAGE_COUNT)));
+        movieDb.setBackdropPath(imagePath("backdrop", random.nextInt(IMAGE_COUNT)));
+        return movieDb;
+    }
+
+    private void addDetail(MovieDb movieDb) {
+        movieDb.setTagline("Every " + movieDb.getTitle().toLowerCase(Locale.ENGLISH)
+                + " has its day.");
+        movieDb.setOverview("A made-up film about " + movieDb.getTitle()
+                .toLowerCase(Locale.ENGLISH) + ", generated for load testing.");
+        movieDb.setRuntime(80 + random.nextInt(100));
+
+        int castSize = 5 + random.nextInt(40);
+        List<PersonCast> cast = new ArrayList<>(castSize);
+        for (int i = 0; i < castSize; i++) {
+            PersonCast person = new PersonCast();
+            person.setId(random.nextInt(50000));
+            person.setName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+            person.setCharacter("Character " + (i + 1));
+            person.setOrder(i);
+            cast.add(person);
+        }
+
+        WrapperMovieCasts casts = new WrapperMovieCasts();
+        casts.setCast(cast);
+        movieDb.setCasts(casts);
+    }
+
+    private void addFull(MovieDb movieDb) {
+        List<Genre> genres = new ArrayList<>();
+        int genreCount = 1 + random.nextInt(3);
+        for (int i = 0; i < genreCount; i++) {
+            Genre genre = new Genre();
+            int genreId = random.nextInt(GENRES.length);
+            genre.setId(genreId + 1);
+            genre.setName(GENRES[genreId]);
+            genres.add(genre);
+        }
+        movieDb.setGenres(genres);
+
+        List<Keyword> keywords = new ArrayList<>();
+        for (String word : movieDb.getTitle().split(" ")) {
+            Keyword keyword = new Keyword();
+            keyword.setId(Math.abs(word.hashCode()) % 100000);
+            keyword.setName(word.toLowerCase(Locale.ENGLISH));
+            keywords.add(keyword);
+        }
+        WrapperMovieKeywords movieKeywords = new WrapperMovieKeywords();
+        movieKeywords.setKeywords(keywords);
+        movieDb.setKeywords(movieKeywords);
+    }
+
+    private void writeImages() throws IOException {
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            writeImage(imagePath("poster", i), ImageType.POSTER.getSize(), 342, 513, i);
+            writeImage(imagePath("backdrop", i), ImageType.BACKDROP.getSize(), 780, 439, i);
+        }
+    }
+
+    private void writeImage(String path, String size, int width, int height, int index)
+            throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        Color colour = Color.getHSBColor((float) index / IMAGE_COUNT, 0.6f, 0.8f);
+        graphics.setPaint(new GradientPaint(0, 0, colour, width, height, Color.BLACK));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        images.write(RecordingMetadataProvider.imageName(path, size), out.toByteArray());
+    }
+
+    private static String imagePath(String type, int index) {
+        return "/synthetic-" + type + "-" + index + ".jpg";
+    }
+
+    /**
+     * Writes a file of the given size that starts with bytes of its own, so
+     * that every file has a different fingerprint.
+     */
+    private void writeFile(File file, long id, long bytes) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.writeLong(id);
+            out.writeLong(random.nextLong());
+            out.setLength(bytes);
+        }
+    }
+
+    /**
+     * Generates a library from the command line.
+     * Arguments: folder, recording directory, number of movies, and
+     * optionally the size of each file in bytes and the seed.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: SyntheticLibrary <folder> <recording> <movies>"
+                    + " [file bytes] [seed]");
+            System.exit(2);
+        }
+
+        long fileBytes = args.length > 3 ? Long.parseLong(args[3]) : 1024 * 1024;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+        int movies = Integer.parseInt(args[2]);
+
+        long start = System.nanoTime();
+        generate(new File(args[0]), new File(args[1]), movies, fileBytes, seed);
+        System.out.println("Generated " + movies + " movies in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+}
@@ -0,0 +1,101 @@
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+import org.yamj.api.common.http.DefaultPoolingHttpClient;
+
+/**
+ * The HTTP client used to talk to TheMovieDb. TheMovieDbApi reads the body of
+ * every response whatever its status, so a rate limited request can look like
+ * an empty search result. This client records the status of the last
+ * response made by each thread, along with any time the server asked us to
+ * wait, so that callers can tell the difference.
+ */
+public class TmdbHttpClient extends DefaultPoolingHttpClient {
+
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    private static final ThreadLocal<int[]> LAST_STATUS = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private static final ThreadLocal<long[]> LAST_RETRY_AFTER = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    public TmdbHttpClient(int maxConnections) {
+        setConnectionsMaxPerRoute(maxConnections);
+        setConnectionsMaxTotal(maxConnections);
+
+        addResponseInterceptor(new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) {
+                LAST_STATUS.get()[0] = response.getStatusLine().getStatusCode();
+                LAST_RETRY_AFTER.get()[0] = parseRetryAfter(response);
+            }
+        });
+    }
+
+    /**
+     * Forgets the last response made by the current thread.
+     */
+    public static void clearLastResponse() {
+        LAST_STATUS.get()[0] = 0;
+        LAST_RETRY_AFTER.get()[0] = 0;
+    }
+
+    /**
+     * Records a response for the current thread as if it had been received,
+     * for providers that do not make HTTP requests of their own.
+     * @param status The status code of the response.
+     * @param retryAfterMs How long the response asks us to wait, or 0.
+     */
+    static void setLastResponse(int status, long retryAfterMs) {
+        LAST_STATUS.get()[0] = status;
+        LAST_RETRY_AFTER.get()[0] = retryAfterMs;
+    }
+
+    /**
+     * Returns the status code of the last response received by the current
+     * thread, or 0 if there has been none since it was cleared.
+     */
+    public static int getLastStatus() {
+        return LAST_STATUS.get()[0];
+    }
+
+    /**
+     * Returns how long the last response received by the current thread asked
+     * us to wait before trying again, or 0 if it did not say.
+     */
+    public static long getLastRetryAfterMs() {
+        return LAST_RETRY_AFTER.get()[0];
+    }
+
+    private static long parseRetryAfter(HttpResponse response) {
+        try {
+            Header retryAfter = response.getFirstHeader("Retry-After");
+            if (retryAfter != null) {
+                return Long.parseLong(retryAfter.getValue().trim()) * 1000;
+            }
+
+            // Older API versions only give the time the rate limit window resets.
+            Header reset = response.getFirstHeader("X-RateLimit-Reset");
+            if (reset != null) {
+                long resetMs = Long.parseLong(reset.getValue().trim()) * 1000;
+                return Math.max(0, resetMs - System.currentTimeMillis());
+            }
+        }
+        catch (NumberFormatException e) {
+            // An HTTP date or something else unexpected; fall back to backing off.
+        }
+
+        return 0;
+    }
+
+}
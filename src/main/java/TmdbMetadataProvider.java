@@ -0,0 +1,62 @@
+import com.omertron.themoviedbapi.MovieDbException;
+import com.omertron.themoviedbapi.TheMovieDbApi;
+import com.omertron.themoviedbapi.model.MovieDb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Fetches movie information and images from TheMovieDb.
+ */
+public class TmdbMetadataProvider implements MetadataProvider {
+
+    private final TheMovieDbApi movieDatabase;
+
+    /**
+     * @param apiKey The TheMovieDb API key.
+     * @param maxConnections The number of connections to TheMovieDb to keep open.
+     * @throws MovieDbException If the API key is missing or could not be used.
+     */
+    public TmdbMetadataProvider(String apiKey, int maxConnections) throws MovieDbException {
+        movieDatabase = new TheMovieDbApi(apiKey, new TmdbHttpClient(maxConnections));
+    }
+
+    @Override
+    public List<MovieDb> searchMovie(String title, int year) throws MovieDbException {
+        return movieDatabase.searchMovie(title, year, null, false, 0).getResults();
+    }
+
+    @Override
+    public MovieDb getMovieInfo(int movieId, FetchProfile profile) throws MovieDbException {
+        String searchTerms = profile.getAppendToResponse();
+        if (searchTerms.isEmpty()) {
+            return movieDatabase.getMovieInfo(movieId, "en");
+        }
+        return movieDatabase.getMovieInfo(movieId, "en", searchTerms);
+    }
+
+    @Override
+    public byte[] getImage(String path, String size) throws IOException {
+        URL url;
+        try {
+            url = movieDatabase.createImageUrl(path, size);
+        }
+        catch (MovieDbException e) {
+            throw new IOException("No URL for image " + path, e);
+        }
+
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+}